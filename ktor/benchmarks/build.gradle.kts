@@ -0,0 +1,36 @@
+plugins {
+    alias(libs.plugins.kotlinJvm)
+    alias(libs.plugins.jmh)
+}
+
+repositories {
+    mavenCentral()
+    google()
+}
+
+dependencies {
+    jmhImplementation(project(":lib"))
+    jmhImplementation(enforcedPlatform(libs.ktor.bom))
+    jmhImplementation(libs.ktor.server.websockets)
+    jmhImplementation(libs.ktor.server.sessions)
+    jmhImplementation(libs.ktor.server.testhost)
+    jmhImplementation(libs.ktor.client.cio)
+    jmhImplementation(libs.ktor.client.websockets)
+    jmhImplementation(libs.kotlinx.coroutines.core)
+}
+
+// Run with: ./gradlew :benchmarks:jmh
+// A single benchmark can be selected with: ./gradlew :benchmarks:jmh -Pjmh.includes=FanOutBenchmark
+// and profilers added with: -Pjmh.profilers=gc
+// The forks run on the JVM running Gradle, unless another one is set with: -Pjmh.jvm=/path/to/jdk-21/bin/java
+// (the virtual-threads engine of EngineBenchmark and EngineHttpBenchmark needs Java 21 or newer)
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+    (findProperty("jmh.includes") as String?)?.let { includes.add(it) }
+    (findProperty("jmh.profilers") as String?)?.let { profilers.addAll(it.split(",")) }
+    (findProperty("jmh.jvm") as String?)?.let { jvm.set(it) }
+}
@@ -0,0 +1,60 @@
+package benchmarks
+
+import application.monitoring.AccessLogConfig
+import application.plugins.configureMonitoring
+import io.ktor.client.request.*
+import io.ktor.client.statement.*
+import io.ktor.http.*
+import io.ktor.server.application.*
+import io.ktor.server.response.*
+import io.ktor.server.routing.*
+import io.ktor.server.testing.*
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the time per `/hello` request, in process and without a network, without logging (`none`),
+ * with the synchronous CallLogging (`call-logging`, logging every call to the console as the chat used to do),
+ * and with the asynchronous access log logging every call (`access-log`) or a tenth of them (`access-log-sampled`).
+ * The difference with `none` is the logging overhead per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class AccessLogBenchmark {
+
+    @Param("none", "call-logging", "access-log", "access-log-sampled")
+    var logging: String = ""
+
+    private lateinit var engine: TestApplicationEngine
+
+    @Setup
+    fun setup() {
+        engine = TestApplicationEngine(createTestEnvironment {
+            module {
+                when (logging) {
+                    "call-logging" -> configureMonitoring()
+                    "access-log" -> configureMonitoring(AccessLogConfig())
+                    "access-log-sampled" -> configureMonitoring(AccessLogConfig(sampleRate = 0.1))
+                }
+                routing {
+                    get("/hello") {
+                        call.respondText("HELLO WORLD!", contentType = ContentType.Text.Plain)
+                    }
+                }
+            }
+        })
+        engine.start()
+    }
+
+    @TearDown
+    fun tearDown() {
+        engine.stop(0, 0)
+    }
+
+    @Benchmark
+    fun request() = runBlocking {
+        engine.client.get("/hello").readBytes()
+    }
+}
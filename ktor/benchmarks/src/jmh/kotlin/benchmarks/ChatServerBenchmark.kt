@@ -0,0 +1,90 @@
+package benchmarks
+
+import application.server.ChatServer
+import application.server.ChatServerConfig
+import benchmarks.support.DeliveryProbe
+import benchmarks.support.DeliverySocket
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the throughput of the hot paths of [ChatServer] at several member counts, each member with one socket.
+ * Every operation waits until the frames it sends are written to the sockets, so the cost of the writers is
+ * included. Run it with the `gc` profiler to get the allocations per operation (`gc.alloc.rate.norm`) and the
+ * GC pressure (`gc.count` and `gc.time`).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class ChatServerBenchmark {
+
+    @Param("100", "1000", "10000")
+    var members: Int = 0
+
+    private val probe = DeliveryProbe()
+    private val job = Job()
+    private lateinit var server: ChatServer
+    private var churned = 0
+
+    @Setup
+    fun setup() = runBlocking {
+        server = ChatServer(ChatServerConfig(outboundCapacity = 1024))
+        repeat(members) {
+            server.memberJoin("member$it", DeliverySocket(Dispatchers.Default + job, probe))
+        }
+        // Lets the join notifications drain before measuring.
+        while (server.outboundMetrics.queuedFrames > 0) delay(10)
+    }
+
+    @TearDown
+    fun tearDown() {
+        job.cancel()
+    }
+
+    /**
+     * A message sent to the whole room, which is also kept in the history.
+     */
+    @Benchmark
+    fun message() = runBlocking {
+        probe.expect(members)
+        server.message("member0", "hello")
+        probe.await()
+    }
+
+    /**
+     * A notice broadcast to the whole room, which is not kept in the history.
+     */
+    @Benchmark
+    fun broadcastNotice() = runBlocking {
+        probe.expect(members)
+        server.memberRenamed("member0", "member0")
+        probe.await()
+    }
+
+    /**
+     * A new member joining and leaving, which is notified to the whole room both times.
+     */
+    @Benchmark
+    fun joinLeave() = runBlocking {
+        val member = "churn${churned++}"
+        val socket = DeliverySocket(Dispatchers.Default + job, probe)
+        probe.expect(2 * members + 1)
+        server.memberJoin(member, socket)
+        server.memberLeft(member, socket)
+        probe.await()
+    }
+
+    /**
+     * The list of all the member names, sent to a single member.
+     */
+    @Benchmark
+    fun who() = runBlocking {
+        probe.expect(1)
+        server.who("member0")
+        probe.await()
+    }
+}
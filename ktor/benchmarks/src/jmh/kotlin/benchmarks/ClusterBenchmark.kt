@@ -0,0 +1,86 @@
+package benchmarks
+
+import application.server.ChatServer
+import application.server.cluster.ClusterBus
+import application.server.cluster.ClusterConfig
+import application.server.cluster.InProcessClusterBus
+import application.server.cluster.InProcessClusterHub
+import application.server.cluster.TcpClusterBus
+import benchmarks.support.DeliveryProbe
+import benchmarks.support.DeliverySocket
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the cross-node delivery latency: the time between a member of one node sending a message and the sockets
+ * of the members of another node having it written, through each bus transport and batch window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class ClusterBenchmark {
+
+    @Param("in-process", "tcp")
+    var transport: String = ""
+
+    @Param("0", "1")
+    var batchWindowMillis: Long = 0
+
+    @Param("100")
+    var remoteSockets: Int = 0
+
+    private val probe = DeliveryProbe()
+    private val job = Job()
+    private lateinit var busA: ClusterBus
+    private lateinit var busB: ClusterBus
+    private lateinit var nodeA: ChatServer
+
+    @Setup
+    fun setup() = runBlocking {
+        when (transport) {
+            "in-process" -> {
+                val hub = InProcessClusterHub()
+                busA = InProcessClusterBus("a", hub, batchWindowMillis)
+                busB = InProcessClusterBus("b", hub, batchWindowMillis)
+            }
+
+            else -> {
+                val portA = ServerSocket(0).use { it.localPort }
+                val portB = ServerSocket(0).use { it.localPort }
+                busA = TcpClusterBus(cluster("a", portA, portB))
+                busB = TcpClusterBus(cluster("b", portB, portA))
+            }
+        }
+        nodeA = ChatServer(bus = busA)
+        val nodeB = ChatServer(bus = busB)
+        nodeA.memberJoin("sender", DeliverySocket(Dispatchers.Default + job, DeliveryProbe()))
+        repeat(remoteSockets) {
+            nodeB.memberJoin("member$it", DeliverySocket(Dispatchers.Default + job, probe))
+        }
+        // Lets the join notifications go through the bus before measuring.
+        delay(500)
+    }
+
+    private fun cluster(node: String, port: Int, peer: Int) =
+        ClusterConfig(node, port = port, peers = listOf(InetSocketAddress("127.0.0.1", peer)), batchWindowMillis = batchWindowMillis)
+
+    @TearDown
+    fun tearDown() {
+        job.cancel()
+        busA.close()
+        busB.close()
+    }
+
+    @Benchmark
+    fun crossNodeMessage() = runBlocking {
+        probe.expect(remoteSockets)
+        nodeA.message("sender", "hello")
+        probe.await()
+    }
+}
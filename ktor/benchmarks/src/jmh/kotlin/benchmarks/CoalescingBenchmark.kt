@@ -0,0 +1,76 @@
+package benchmarks
+
+import application.server.ChatServer
+import application.server.ChatServerConfig
+import application.server.coalescing.CoalescingConfig
+import benchmarks.support.DeliveryProbe
+import benchmarks.support.DeliverySocket
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the trade-off of sending messages in batches: [burst] measures how long a burst of messages takes to be
+ * delivered to every socket (the throughput is [BURST] messages per operation), while [single] measures the latency
+ * of a lone message, which waits for the whole window before being sent.
+ * The `off` window sends each message in its own frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class CoalescingBenchmark {
+
+    @Param("off", "0", "1", "5")
+    var windowMillis: String = ""
+
+    @Param("1000")
+    var sockets: Int = 0
+
+    private val probe = DeliveryProbe()
+    private val job = Job()
+    private lateinit var server: ChatServer
+
+    @Setup
+    fun setup() = runBlocking {
+        server = ChatServer(
+            ChatServerConfig(
+                outboundCapacity = 1024,
+                coalescing = windowMillis.toLongOrNull()?.let { CoalescingConfig(it, maxBatchSize = 32) },
+            )
+        )
+        repeat(sockets) {
+            server.memberJoin("member${it % MEMBERS}", DeliverySocket(Dispatchers.Default + job, probe))
+        }
+        // Lets the join notifications drain before measuring.
+        delay(100)
+        while (server.outboundMetrics.queuedFrames > 0) delay(10)
+    }
+
+    @TearDown
+    fun tearDown() {
+        server.close()
+        job.cancel()
+    }
+
+    @Benchmark
+    fun burst() = runBlocking {
+        probe.expect(sockets * BURST)
+        repeat(BURST) { server.message("member0", "hello") }
+        probe.await()
+    }
+
+    @Benchmark
+    fun single() = runBlocking {
+        probe.expect(sockets)
+        server.message("member0", "hello")
+        probe.await()
+    }
+
+    private companion object {
+        const val MEMBERS = 100
+        const val BURST = 100
+    }
+}
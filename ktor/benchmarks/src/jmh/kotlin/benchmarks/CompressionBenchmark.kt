@@ -0,0 +1,92 @@
+package benchmarks
+
+import application.server.coalescing.MessageBatch
+import application.server.outbound.SharedFrame
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+import java.util.zip.Deflater
+import kotlin.random.Random
+
+/**
+ * Measures the CPU cost of compressing typical chat frames with `permessage-deflate`, the same way the websocket
+ * deflate extension does (raw deflate, sync flushed, without the trailing empty block), against the bytes it saves.
+ * The `inputBytes` and `outputBytes` counters hold the bytes before and after compression.
+ * The `message` traffic is single messages, as sent by default or when replaying the history, while the `batch`
+ * traffic is the frames sent with coalescing enabled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class CompressionBenchmark {
+
+    @Param("1", "6", "9")
+    var level: Int = 0
+
+    @Param("true", "false")
+    var contextTakeover: Boolean = false
+
+    @Param("message", "batch")
+    var traffic: String = ""
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    open class Bytes {
+        var inputBytes: Long = 0
+        var outputBytes: Long = 0
+
+        @Setup(Level.Iteration)
+        fun reset() {
+            inputBytes = 0
+            outputBytes = 0
+        }
+    }
+
+    private lateinit var deflater: Deflater
+    private lateinit var frames: List<ByteArray>
+    private val output = ByteArray(64 * 1024)
+    private var next = 0
+
+    @Setup
+    fun setup() {
+        deflater = Deflater(level, true)
+        val random = Random(42)
+        val messages = List(FRAMES * BATCH_SIZE) {
+            val name = "user${random.nextInt(20)}"
+            val text = List(1 + random.nextInt(12)) { WORDS[random.nextInt(WORDS.size)] }.joinToString(" ")
+            SharedFrame.text("[$name] $text")
+        }
+        frames = when (traffic) {
+            "batch" -> messages.chunked(BATCH_SIZE).map { MessageBatch.encode(it).bytes() }
+            else -> messages.take(FRAMES).map { it.bytes() }
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        deflater.end()
+    }
+
+    @Benchmark
+    fun deflate(bytes: Bytes): Int {
+        val frame = frames[next]
+        next = (next + 1) % frames.size
+        if (!contextTakeover) deflater.reset()
+        deflater.setInput(frame)
+        val size = deflater.deflate(output, 0, output.size, Deflater.SYNC_FLUSH) - EMPTY_BLOCK_BYTES
+        bytes.inputBytes += frame.size
+        bytes.outputBytes += size
+        return size
+    }
+
+    private fun SharedFrame.bytes(): ByteArray = ByteArray(size).also { buffer().get(it) }
+
+    private companion object {
+        const val FRAMES = 1000
+        const val BATCH_SIZE = 32
+        const val EMPTY_BLOCK_BYTES = 4
+        val WORDS = listOf(
+            "hello", "hi", "how", "are", "you", "doing", "today", "the", "game", "starts", "at", "eight", "see",
+            "later", "thanks", "ok", "lol", "what", "about", "tomorrow", "anyone", "here", "yes", "no", "maybe",
+        )
+    }
+}
@@ -0,0 +1,49 @@
+package benchmarks
+
+import application.server.outbound.SharedFrame
+import io.ktor.websocket.*
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares the frames built for a single broadcast, when each socket gets a copy of the frame (as `ChatServer` used
+ * to do) against when all the sockets share one encoded payload.
+ * Run it with the `gc` profiler to get the allocation rate per broadcast (`gc.alloc.rate.norm`).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class EncodeOnceBenchmark {
+
+    @Param("100", "1000")
+    var recipients: Int = 0
+
+    @Param("32", "512")
+    var messageLength: Int = 0
+
+    private lateinit var name: String
+    private lateinit var message: String
+
+    @Setup
+    fun setup() {
+        name = "user42"
+        message = "x".repeat(messageLength)
+    }
+
+    @Benchmark
+    fun copyPerSocket(blackhole: Blackhole) {
+        val frame = Frame.Text("[$name] $message")
+        repeat(recipients) {
+            blackhole.consume(frame.copy())
+        }
+    }
+
+    @Benchmark
+    fun encodeOnce(blackhole: Blackhole) {
+        val frame = SharedFrame.text("[$name] $message")
+        repeat(recipients) {
+            blackhole.consume(frame.frame())
+        }
+    }
+}
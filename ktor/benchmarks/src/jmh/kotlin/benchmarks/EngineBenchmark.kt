@@ -0,0 +1,149 @@
+package benchmarks
+
+import application.ChatApplication
+import application.engine.EngineConfig
+import application.engine.ServerEngine
+import application.engine.chatEngine
+import com.typesafe.config.ConfigFactory
+import io.ktor.client.*
+import io.ktor.client.engine.cio.*
+import io.ktor.client.plugins.websocket.*
+import io.ktor.client.request.*
+import io.ktor.client.statement.*
+import io.ktor.server.config.*
+import io.ktor.server.engine.*
+import io.ktor.websocket.*
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Starts the chat application on an [engine], listening on a free local port.
+ * Frames are not rate limited, so the benchmarks can send them as fast as they are handled.
+ * The virtual-threads engine fails the setup of its runs on Java versions without virtual threads, so JMH skips them
+ * and goes on with the other engines.
+ */
+private fun startChat(engine: String): ApplicationEngine {
+    val settings = EngineConfig(ServerEngine.parse(engine), host = "127.0.0.1", port = 0)
+    check(settings.engine != ServerEngine.VIRTUAL_THREADS || Runtime.version().feature() >= 21) {
+        "Skipping the virtual-threads engine, which needs Java 21 or newer but the benchmark runs on Java " +
+            "${Runtime.version().feature()}: run it with -Pjmh.jvm=/path/to/jdk-21/bin/java"
+    }
+    val config = HoconApplicationConfig(
+        ConfigFactory.load().withoutPath("ktor.application").withoutPath("chat.ingress")
+    )
+    return chatEngine(config, settings, listOf { ChatApplication().apply { module() } }).start(wait = false)
+}
+
+private fun ApplicationEngine.port() = runBlocking { resolvedConnectors().first().port }
+
+/**
+ * Measures the time for a message to reach all the [members] of the lobby through real websockets,
+ * on each engine. The clients run in the same process, on the CIO client engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class EngineBenchmark {
+
+    @Param("netty", "cio", "virtual-threads")
+    var engine: String = ""
+
+    @Param("100", "1000")
+    var members: Int = 0
+
+    private lateinit var server: ApplicationEngine
+    private lateinit var client: HttpClient
+    private lateinit var sockets: List<DefaultClientWebSocketSession>
+    private val readers = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
+    @Volatile
+    private var pending = CountDownLatch(0)
+
+    @Setup
+    fun setup() {
+        server = startChat(engine)
+        val port = server.port()
+        client = HttpClient(CIO) {
+            install(WebSockets)
+            engine {
+                maxConnectionsCount = members * 2
+            }
+        }
+        // Each socket has no session cookie, so each one is a member of its own.
+        sockets = runBlocking {
+            List(members) { client.webSocketSession(host = "127.0.0.1", port = port, path = "/ws") }
+        }
+        sockets.forEach { socket ->
+            readers.launch {
+                for (frame in socket.incoming) {
+                    if (frame is Frame.Text && frame.readText().endsWith(MESSAGE)) pending.countDown()
+                }
+            }
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        readers.cancel()
+        client.close()
+        server.stop(0, 1000)
+    }
+
+    @Benchmark
+    fun fanOut() {
+        val latch = CountDownLatch(members)
+        pending = latch
+        runBlocking { sockets.first().send(Frame.Text(MESSAGE)) }
+        latch.await()
+    }
+
+    private companion object {
+        const val MESSAGE = "engine benchmark"
+    }
+}
+
+/**
+ * Measures the requests per second served for a static resource and `/hello`, from several threads at once,
+ * through real connections to each engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+open class EngineHttpBenchmark {
+
+    @Param("netty", "cio", "virtual-threads")
+    var engine: String = ""
+
+    @Param("/index.html", "/hello")
+    var path: String = ""
+
+    private lateinit var server: ApplicationEngine
+    private lateinit var client: HttpClient
+    private var port = 0
+
+    @Setup
+    fun setup() {
+        server = startChat(engine)
+        port = server.port()
+        client = HttpClient(CIO)
+    }
+
+    @TearDown
+    fun tearDown() {
+        client.close()
+        server.stop(0, 1000)
+    }
+
+    @Benchmark
+    fun request() = runBlocking {
+        client.get("http://127.0.0.1:$port$path").readBytes()
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks
+
+import application.server.ChatServer
+import application.server.ChatServerConfig
+import benchmarks.support.DeliveryProbe
+import benchmarks.support.DeliverySocket
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the delivery latency of a broadcast: the time between a member sending a message and every connected
+ * socket having it written. Run it in [Mode.SampleTime] to get the p99 of the latency for each number of sockets,
+ * with sequential (one shard) and sharded fan-out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class FanOutBenchmark {
+
+    @Param("1000", "10000", "50000")
+    var sockets: Int = 0
+
+    @Param("1", "8")
+    var shards: Int = 0
+
+    private val probe = DeliveryProbe()
+    private val job = Job()
+    private lateinit var server: ChatServer
+
+    @Setup
+    fun setup() = runBlocking {
+        server = ChatServer(
+            ChatServerConfig(
+                outboundCapacity = 1024,
+                fanOutShards = shards,
+                parallelFanOutThreshold = 0,
+            )
+        )
+        // Every member joining is broadcast to everyone else, so the sockets are spread across a fixed number of
+        // members (as if each had many tabs open) to keep the setup from being quadratic in the number of sockets.
+        repeat(sockets) {
+            server.memberJoin("member${it % MEMBERS}", DeliverySocket(Dispatchers.Default + job, probe))
+        }
+        // Lets the join notifications drain before measuring.
+        while (server.outboundMetrics.queuedFrames > 0) delay(10)
+    }
+
+    @TearDown
+    fun tearDown() {
+        job.cancel()
+    }
+
+    @Benchmark
+    fun broadcast() = runBlocking {
+        probe.expect(sockets)
+        server.message("member0", "hello")
+        probe.await()
+    }
+
+    private companion object {
+        const val MEMBERS = 1000
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks
+
+import application.server.members.MemberRegistry
+import application.server.outbound.OutboundMetrics
+import application.server.outbound.OutboundQueue
+import application.server.outbound.OverflowPolicy
+import benchmarks.support.DeliveryProbe
+import benchmarks.support.DeliverySocket
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the time for 10k sockets to join a [MemberRegistry] at the same time, and then to leave it,
+ * from as many threads as processors. Each member has [socketsPerMember] sockets, handled by different threads,
+ * so the sockets of a member contend with each other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class MemberRegistryBenchmark {
+
+    @Param("1", "3")
+    var socketsPerMember: Int = 0
+
+    private val job = Job()
+    private val threads = Runtime.getRuntime().availableProcessors()
+    private lateinit var executor: ExecutorService
+    private lateinit var registry: MemberRegistry
+    private lateinit var queues: List<OutboundQueue>
+    private lateinit var ids: List<String>
+
+    @Setup
+    fun setup() {
+        executor = Executors.newFixedThreadPool(threads)
+        registry = MemberRegistry(threads)
+        val metrics = OutboundMetrics()
+        val probe = DeliveryProbe()
+        queues = List(SOCKETS) {
+            OutboundQueue(DeliverySocket(Dispatchers.Default + job, probe), 16, OverflowPolicy.DROP_OLDEST, metrics)
+        }
+        ids = List(SOCKETS) { "member${it / socketsPerMember}" }
+    }
+
+    @TearDown
+    fun tearDown() {
+        executor.shutdownNow()
+        job.cancel()
+    }
+
+    /**
+     * Runs an [action] for every socket, each thread taking every other socket, so consecutive sockets (of the same
+     * member) are handled by different threads.
+     */
+    private fun concurrently(action: (Int) -> Unit) {
+        executor.invokeAll(List(threads) { thread ->
+            Callable {
+                for (index in thread until SOCKETS step threads) action(index)
+            }
+        })
+    }
+
+    @Benchmark
+    fun joinAndLeave(): Int {
+        concurrently { registry.join(ids[it], queues[it]) { ids[it] } }
+        val members = registry.size
+        concurrently { registry.leave(ids[it], queues[it].socket) }
+        return members
+    }
+
+    private companion object {
+        const val SOCKETS = 10_000
+    }
+}
@@ -0,0 +1,112 @@
+package benchmarks
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import protocol.ChatRecord
+import protocol.ChatRecordReader
+import protocol.MessageType
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Compares the text protocol against the binary one on typical chat traffic:
+ * - [textDecode] and [binaryDecode] measure how long the server takes to find out what a received frame asks for,
+ *   with the fields it actually uses decoded, on a mix of messages and commands.
+ * - [textEncode] and [binaryEncode] measure how long a message takes to be encoded for its recipients,
+ *   with the `wireBytes` counter holding the bytes of the encoded frames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class ProtocolBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    open class Wire {
+        var wireBytes: Long = 0
+
+        @Setup(Level.Iteration)
+        fun reset() {
+            wireBytes = 0
+        }
+    }
+
+    private class Message(val sender: String, val room: String, val text: String)
+
+    private lateinit var messages: List<Message>
+    private lateinit var textFrames: List<ByteArray>
+    private lateinit var binaryFrames: List<ByteArray>
+    private var next = 0
+
+    @Setup
+    fun setup() {
+        val random = Random(42)
+        messages = List(FRAMES) {
+            val text = List(1 + random.nextInt(12)) { WORDS[random.nextInt(WORDS.size)] }.joinToString(" ")
+            Message("user${random.nextInt(1000)}", "lobby", text)
+        }
+        // One received frame out of ten is a command.
+        val received = messages.mapIndexed { i, message ->
+            when (i % 10) {
+                0 -> MessageType.RENAME to "/user ${message.sender}"
+                5 -> MessageType.JOIN to "/join games"
+                else -> MessageType.MESSAGE to message.text
+            }
+        }
+        textFrames = received.map { (_, text) -> text.encodeToByteArray() }
+        binaryFrames = received.map { (type, text) ->
+            when (type) {
+                MessageType.RENAME -> ChatRecord.encode(type, payload = text.removePrefix("/user ").trim())
+                MessageType.JOIN -> ChatRecord.encode(type, room = text.removePrefix("/join ").trim())
+                else -> ChatRecord.encode(type, payload = text)
+            }
+        }
+    }
+
+    private fun nextIndex(): Int = next.also { next = (next + 1) % FRAMES }
+
+    @Benchmark
+    fun textDecode(blackhole: Blackhole) {
+        val command = textFrames[nextIndex()].decodeToString()
+        when {
+            command.startsWith("/who") -> blackhole.consume(0)
+            command.startsWith("/user") -> blackhole.consume(command.removePrefix("/user").trim())
+            command.startsWith("/join") -> blackhole.consume(command.removePrefix("/join").trim())
+            command.startsWith("/help") -> blackhole.consume(1)
+            else -> blackhole.consume(command)
+        }
+    }
+
+    @Benchmark
+    fun binaryDecode(blackhole: Blackhole) {
+        val reader = ChatRecordReader(binaryFrames[nextIndex()])
+        while (reader.next()) {
+            when (reader.type) {
+                MessageType.RENAME -> blackhole.consume(reader.payload().trim())
+                MessageType.JOIN -> blackhole.consume(reader.room().trim())
+                else -> blackhole.consume(reader.payload())
+            }
+        }
+    }
+
+    @Benchmark
+    fun textEncode(wire: Wire): ByteArray {
+        val message = messages[nextIndex()]
+        return "[${message.sender}] ${message.text}".encodeToByteArray().also { wire.wireBytes += it.size }
+    }
+
+    @Benchmark
+    fun binaryEncode(wire: Wire): ByteArray {
+        val message = messages[nextIndex()]
+        return ChatRecord.encode(MessageType.MESSAGE, message.sender, message.room, message.text)
+            .also { wire.wireBytes += it.size }
+    }
+
+    private companion object {
+        const val FRAMES = 1000
+        val WORDS = listOf(
+            "hello", "hi", "how", "are", "you", "doing", "today", "the", "game", "starts", "at", "eight", "see",
+            "later", "thanks", "ok", "lol", "what", "about", "tomorrow", "anyone", "here", "yes", "no", "maybe",
+        )
+    }
+}
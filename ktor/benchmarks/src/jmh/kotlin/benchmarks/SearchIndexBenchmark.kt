@@ -0,0 +1,62 @@
+package benchmarks
+
+import application.server.search.SearchConfig
+import application.server.search.SearchIndex
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Measures the cost of indexing a message into a [SearchIndex] whose window is already full (so it includes
+ * evicting the oldest message), and the latency of searches, at one million indexed messages of a room.
+ *
+ * Messages are made of words drawn from a skewed vocabulary, as natural text: a few words are in most messages,
+ * while most words are rare. Searches either combine two common words (long posting lists, many matches)
+ * or a rare word with a common one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SearchIndexBenchmark {
+
+    @Param("1000000")
+    var indexed: Int = 0
+
+    private val random = Random(42)
+    private val vocabulary = List(VOCABULARY) { "word$it" }
+    private val messages = List(MESSAGES) { message() }
+    private lateinit var index: SearchIndex
+    private var next = 0
+
+    /**
+     * Draws a word, with the first words of the vocabulary much more likely than the last ones.
+     */
+    private fun word(): String = vocabulary[(random.nextDouble().let { it * it * it } * VOCABULARY).toInt()]
+
+    private fun message(): String = List(WORDS_PER_MESSAGE) { word() }.joinToString(" ")
+
+    @Setup
+    fun setup() {
+        index = SearchIndex(SearchConfig(window = indexed))
+        repeat(indexed) {
+            index.add("user${it % 1000}", messages[it % MESSAGES])
+        }
+    }
+
+    @Benchmark
+    fun add() {
+        index.add("user0", messages[next++ and (MESSAGES - 1)])
+    }
+
+    @Benchmark
+    fun searchCommonTerms() = index.search("word0 word1")
+
+    @Benchmark
+    fun searchRareTerm() = index.search("word0 word${VOCABULARY - 100}")
+
+    private companion object {
+        const val VOCABULARY = 20_000
+        const val MESSAGES = 1 shl 14
+        const val WORDS_PER_MESSAGE = 10
+    }
+}
@@ -0,0 +1,84 @@
+package benchmarks
+
+import application.models.ChatSession
+import application.plugins.configureSessions
+import configureInterceptors
+import io.ktor.client.request.*
+import io.ktor.client.statement.*
+import io.ktor.http.*
+import io.ktor.server.application.*
+import io.ktor.server.http.content.*
+import io.ktor.server.response.*
+import io.ktor.server.routing.*
+import io.ktor.server.sessions.*
+import io.ktor.server.testing.*
+import io.ktor.util.*
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the requests per second served for static resources and `/hello`, in process and without a network,
+ * when sessions are handled for every request (`application`, as the chat used to do) against only for the chat
+ * route (`route`).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class StaticResourcesBenchmark {
+
+    @Param("application", "route")
+    var sessions: String = ""
+
+    @Param("/index.html", "/hello")
+    var path: String = ""
+
+    private lateinit var engine: TestApplicationEngine
+
+    @Setup
+    fun setup() {
+        engine = TestApplicationEngine(createTestEnvironment {
+            module {
+                when (sessions) {
+                    "application" -> {
+                        install(Sessions) {
+                            cookie<ChatSession>("SESSION")
+                        }
+                        intercept(ApplicationCallPipeline.Plugins) {
+                            if (call.sessions.get<ChatSession>() == null) {
+                                call.sessions.set(ChatSession(generateNonce()))
+                            }
+                        }
+                        routing { routes() }
+                    }
+
+                    else -> routing {
+                        route("/ws") {
+                            configureSessions()
+                            configureInterceptors()
+                        }
+                        routes()
+                    }
+                }
+            }
+        })
+        engine.start()
+    }
+
+    private fun Route.routes() {
+        get("/hello") {
+            call.respondText("HELLO WORLD!", contentType = ContentType.Text.Plain)
+        }
+        staticResources("/", "web")
+    }
+
+    @TearDown
+    fun tearDown() {
+        engine.stop(0, 0)
+    }
+
+    @Benchmark
+    fun request() = runBlocking {
+        engine.client.get(path).readBytes()
+    }
+}
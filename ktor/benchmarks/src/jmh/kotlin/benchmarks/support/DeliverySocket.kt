@@ -0,0 +1,79 @@
+package benchmarks.support
+
+import application.server.coalescing.MessageBatch
+import io.ktor.websocket.*
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ReceiveChannel
+import kotlinx.coroutines.channels.SendChannel
+import java.util.concurrent.CountDownLatch
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Tracks the deliveries of messages to many [DeliverySocket]s.
+ */
+class DeliveryProbe {
+
+    @Volatile
+    private var pending: CountDownLatch? = null
+
+    /**
+     * Starts expecting [count] deliveries.
+     */
+    fun expect(count: Int) {
+        pending = CountDownLatch(count)
+    }
+
+    /**
+     * Waits until all the expected deliveries happened.
+     */
+    fun await() {
+        pending?.await()
+        pending = null
+    }
+
+    internal fun delivered(messages: Int = 1) {
+        val latch = pending ?: return
+        repeat(messages) { latch.countDown() }
+    }
+}
+
+/**
+ * A [WebSocketSession] without a network connection behind it, which accepts every frame immediately and reports
+ * the messages it holds to a [probe]. This measures the server logic in isolation from the network stack.
+ */
+class DeliverySocket(
+    override val coroutineContext: CoroutineContext,
+    private val probe: DeliveryProbe,
+) : WebSocketSession {
+    override var masking: Boolean = false
+    override var maxFrameSize: Long = Long.MAX_VALUE
+    override val incoming: ReceiveChannel<Frame> = Channel()
+    override val outgoing: SendChannel<Frame> = Channel(Channel.UNLIMITED)
+    override val extensions: List<WebSocketExtension<*>> = emptyList()
+
+    override suspend fun send(frame: Frame) = probe.delivered(messages(frame.data))
+
+    override suspend fun flush() = Unit
+
+    @Deprecated("Use cancel() instead.", level = DeprecationLevel.ERROR)
+    override fun terminate() = Unit
+
+    /**
+     * Counts the messages in a frame, which is either a [MessageBatch] or a single message.
+     */
+    private fun messages(data: ByteArray): Int {
+        if (data.isEmpty() || data[0] != MessageBatch.MARKER) return 1
+        var count = 0
+        var position = 1
+        while (position < data.size) {
+            var length = 0
+            while (data[position] != ':'.code.toByte()) {
+                length = length * 10 + (data[position] - '0'.code.toByte())
+                position++
+            }
+            position += length + 1
+            count++
+        }
+        return count
+    }
+}
@@ -3,4 +3,6 @@ plugins {
     alias(libs.plugins.androidLibrary) apply false
     alias(libs.plugins.androidApplication) apply false
     alias(libs.plugins.kotlinAndroid) apply false
+    alias(libs.plugins.kotlinJvm) apply false
+    alias(libs.plugins.jmh) apply false
 }
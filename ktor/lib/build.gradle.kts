@@ -52,6 +52,7 @@ kotlin {
             dependencies {
                 implementation(libs.kotlin.stdlib.jdk8)
                 implementation(libs.ktor.server.netty)
+                implementation(libs.ktor.server.cio)
                 implementation(libs.ktor.server.websockets)
                 implementation(libs.ktor.server.calllogging)
                 implementation(libs.ktor.server.defaultheaders)
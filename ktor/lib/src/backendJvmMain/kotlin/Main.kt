@@ -1,12 +1,12 @@
-import application.ChatApplication
-import io.ktor.server.engine.*
-import io.ktor.server.netty.*
+import application.config.engineConfig
+import application.engine.chatEngine
+import com.typesafe.config.ConfigFactory
+import io.ktor.server.config.*
 
 /**
- * An entry point of the application.
+ * An entry point of the application, which runs it on the engine configured in `application.conf`.
  */
 fun main() {
-    embeddedServer(factory = Netty, port = 8080) {
-        ChatApplication().apply { module() }
-    }.start(wait = true)
+    val config = HoconApplicationConfig(ConfigFactory.load())
+    chatEngine(config, config.engineConfig()).start(wait = true)
 }
@@ -1,13 +1,18 @@
 package application
 
+import application.assets.StaticAssetCache
+import application.config.accessLogConfig
+import application.config.chatServerConfig
+import application.config.clusterConfig
+import application.config.staticAssetsConfig
+import application.config.webSocketCompressionConfig
 import application.plugins.configureHeaders
 import application.plugins.configureMonitoring
-import application.plugins.configureSessions
 import application.plugins.configureStatusPages
 import application.plugins.configureWebSockets
 import application.router.configureRouting
 import application.server.ChatServer
-import configureInterceptors
+import application.server.cluster.TcpClusterBus
 import io.ktor.server.application.*
 
 /**
@@ -16,7 +21,7 @@ import io.ktor.server.application.*
 class ChatApplication {
 
     // Note: Cannot be object otherwise tests will accumulate state
-    private val server = ChatServer()
+    private lateinit var server: ChatServer
 
     /**
      * Defines the application main module with:
@@ -25,12 +30,18 @@ class ChatApplication {
      */
     fun Application.module() {
 
+        val bus = environment.config.clusterConfig()?.let { TcpClusterBus(it) }
+        server = ChatServer(environment.config.chatServerConfig(), bus)
+        val assets = environment.config.staticAssetsConfig()?.let { StaticAssetCache(it) }
+        environment.monitor.subscribe(ApplicationStopped) {
+            server.close()
+            bus?.close()
+            assets?.close()
+        }
         configureHeaders()
-        configureMonitoring()
-        configureSessions()
-        configureWebSockets()
-        configureRouting(server)
-        configureInterceptors()
+        configureMonitoring(environment.config.accessLogConfig())
+        configureWebSockets(environment.config.webSocketCompressionConfig())
+        configureRouting(server, assets)
         configureStatusPages()
     }
 }
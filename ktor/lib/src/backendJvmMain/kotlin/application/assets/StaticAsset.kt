@@ -0,0 +1,71 @@
+package application.assets
+
+import io.ktor.http.*
+import java.io.ByteArrayOutputStream
+import java.security.MessageDigest
+import java.util.zip.Deflater
+import java.util.zip.GZIPOutputStream
+
+/**
+ * A static asset held in memory along with its compressed variants, each one with its own strong ETag.
+ */
+class StaticAsset(
+    val contentType: ContentType,
+    val identity: Variant,
+    val gzip: Variant?,
+    val brotli: Variant?,
+) {
+
+    /**
+     * The bytes of an asset in a given content [encoding], or without encoding if null.
+     */
+    class Variant(val bytes: ByteArray, val etag: String, val encoding: String?)
+
+    /**
+     * Picks the smallest variant the client accepts according to its `Accept-Encoding` header.
+     */
+    fun negotiate(acceptEncoding: String?): Variant {
+        if (acceptEncoding == null) return identity
+        val accepted = acceptEncoding.split(',').mapNotNull { entry ->
+            val parts = entry.split(';')
+            val quality = parts.drop(1).firstOrNull { it.trim().startsWith("q=") }
+                ?.substringAfter('=')?.trim()?.toDoubleOrNull() ?: 1.0
+            if (quality > 0) parts[0].trim().lowercase() else null
+        }
+        return when {
+            brotli != null && "br" in accepted -> brotli
+            gzip != null && "gzip" in accepted -> gzip
+            else -> identity
+        }
+    }
+
+    companion object {
+        /**
+         * Creates an asset from its [bytes], compressing them with gzip, and with the [brotli] bytes precompressed
+         * by the build if any. Compressed variants are only kept when they are smaller.
+         */
+        fun of(path: String, bytes: ByteArray, brotli: ByteArray?): StaticAsset {
+            val digest = MessageDigest.getInstance("SHA-256").digest(bytes)
+                .take(ETAG_BYTES).joinToString("") { "%02x".format(it) }
+            val gzip = gzip(bytes)
+            return StaticAsset(
+                contentType = ContentType.defaultForFilePath(path),
+                identity = Variant(bytes, "\"$digest\"", null),
+                gzip = gzip.takeIf { it.size < bytes.size }?.let { Variant(it, "\"$digest-gz\"", "gzip") },
+                brotli = brotli?.takeIf { it.size < bytes.size }?.let { Variant(it, "\"$digest-br\"", "br") },
+            )
+        }
+
+        private fun gzip(bytes: ByteArray): ByteArray {
+            val output = ByteArrayOutputStream(bytes.size / 2)
+            object : GZIPOutputStream(output) {
+                init {
+                    def.setLevel(Deflater.BEST_COMPRESSION)
+                }
+            }.use { it.write(bytes) }
+            return output.toByteArray()
+        }
+
+        private const val ETAG_BYTES = 16
+    }
+}
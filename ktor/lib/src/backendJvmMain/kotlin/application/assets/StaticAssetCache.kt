@@ -0,0 +1,158 @@
+package application.assets
+
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.net.JarURLConnection
+import java.nio.file.ClosedWatchServiceException
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardWatchEventKinds
+import java.nio.file.WatchKey
+import java.nio.file.WatchService
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.concurrent.thread
+import kotlin.io.path.isDirectory
+import kotlin.io.path.isRegularFile
+import kotlin.io.path.readBytes
+
+/**
+ * Holds the static assets of the web client in memory, loaded once at startup with their compressed variants,
+ * so serving them takes neither file reads nor compression.
+ *
+ * Brotli variants are taken from `.br` files next to the assets, precompressed by the build, since there is
+ * no brotli encoder in the JVM.
+ */
+class StaticAssetCache(val config: StaticAssetsConfig) : Closeable {
+
+    private val logger = LoggerFactory.getLogger(StaticAssetCache::class.java)
+
+    private val assets = ConcurrentHashMap<String, StaticAsset>()
+    private var watcher: WatchService? = null
+
+    /**
+     * The value of the `Cache-Control` header of the assets.
+     */
+    val cacheControl = if (config.maxAgeSeconds == 0L) "no-cache" else "public, max-age=${config.maxAgeSeconds}"
+
+    init {
+        val directory = config.directory
+        if (directory != null) {
+            loadDirectory(directory)
+            if (config.reload) watch(directory)
+        } else {
+            loadResources(config.resource)
+        }
+        logger.info("Loaded {} static assets", assets.size)
+    }
+
+    /**
+     * Returns the asset at a [path] relative to the assets root, e.g. `index.html`.
+     */
+    operator fun get(path: String): StaticAsset? = assets[path]
+
+    private fun loadDirectory(directory: Path) {
+        Files.walk(directory).use { paths ->
+            paths.filter { it.isRegularFile() }.forEach { load(directory, it) }
+        }
+    }
+
+    private fun load(root: Path, file: Path) {
+        val path = root.relativize(file).joinToString("/")
+        if (path.endsWith(BROTLI_SUFFIX)) {
+            // Reloads the asset the precompressed file belongs to.
+            val asset = file.resolveSibling(file.fileName.toString().removeSuffix(BROTLI_SUFFIX))
+            if (asset.isRegularFile()) load(root, asset)
+            return
+        }
+        val brotli = file.resolveSibling(file.fileName.toString() + BROTLI_SUFFIX)
+        assets[path] = StaticAsset.of(path, file.readBytes(), brotli.takeIf { it.isRegularFile() }?.readBytes())
+    }
+
+    private fun loadResources(resource: String) {
+        val url = javaClass.classLoader.getResource(resource) ?: error("Static resources not found: $resource")
+        when (url.protocol) {
+            "file" -> loadDirectory(Paths.get(url.toURI()))
+            "jar" -> {
+                val prefix = "$resource/"
+                val jar = (url.openConnection() as JarURLConnection).jarFile
+                val entries = jar.entries().asSequence()
+                    .filter { !it.isDirectory && it.name.startsWith(prefix) }
+                    .associate { entry ->
+                        entry.name.removePrefix(prefix) to jar.getInputStream(entry).use { it.readBytes() }
+                    }
+                for ((path, bytes) in entries) {
+                    if (path.endsWith(BROTLI_SUFFIX)) continue
+                    assets[path] = StaticAsset.of(path, bytes, entries[path + BROTLI_SUFFIX])
+                }
+            }
+
+            else -> error("Unsupported static resources location: $url")
+        }
+    }
+
+    /**
+     * Reloads the assets of a [directory] when its files change, in a background thread.
+     * Directories created later are watched as well, and their files loaded.
+     */
+    private fun watch(directory: Path) {
+        val service = FileSystems.getDefault().newWatchService()
+        watcher = service
+        // Only the watcher thread updates the keys once it is started.
+        val keys = HashMap<WatchKey, Path>()
+        register(service, directory, keys)
+        thread(name = "static-assets-watcher", isDaemon = true) {
+            try {
+                while (true) {
+                    val key = service.take()
+                    val parent = keys[key]
+                    for (event in key.pollEvents()) {
+                        val file = parent?.resolve(event.context() as? Path ?: continue) ?: continue
+                        val path = directory.relativize(file).joinToString("/")
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && file.isDirectory()) {
+                            // Its files may be created before it is registered, so they are loaded right away.
+                            register(service, file, keys)
+                            Files.walk(file).use { paths ->
+                                paths.filter { it.isRegularFile() }.forEach { load(directory, it) }
+                            }
+                        } else if (file.isRegularFile() || path.endsWith(BROTLI_SUFFIX)) {
+                            // A changed precompressed file reloads the asset it belongs to.
+                            load(directory, file)
+                        } else {
+                            assets.remove(path)
+                            assets.keys.removeIf { it.startsWith("$path/") }
+                        }
+                        logger.info("Reloaded static asset {}", path)
+                    }
+                    // The key is no longer valid once its directory is deleted.
+                    if (!key.reset()) keys.remove(key)
+                }
+            } catch (ignore: ClosedWatchServiceException) {
+                // the cache was closed
+            }
+        }
+    }
+
+    private fun register(service: WatchService, directory: Path, keys: MutableMap<WatchKey, Path>) {
+        Files.walk(directory).use { paths ->
+            paths.filter { it.isDirectory() }.forEach {
+                val key = it.register(
+                    service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                )
+                keys[key] = it
+            }
+        }
+    }
+
+    override fun close() {
+        watcher?.close()
+    }
+
+    private companion object {
+        const val BROTLI_SUFFIX = ".br"
+    }
+}
@@ -0,0 +1,39 @@
+package application.assets
+
+import io.ktor.http.*
+import io.ktor.server.application.*
+import io.ktor.server.request.*
+import io.ktor.server.response.*
+import io.ktor.server.routing.*
+
+/**
+ * Serves the assets of a [cache] from memory, for the paths not matched by any other route, with `index.html` at `/`.
+ * Each response has the strong ETag of the variant sent, so clients revalidating an asset they already have
+ * get a `304 Not Modified` without any body.
+ */
+fun Route.staticAssets(cache: StaticAssetCache) {
+    get("{path...}") {
+        val path = call.parameters.getAll("path").orEmpty().joinToString("/").ifEmpty { INDEX }
+        // Not responding lets the request end in a 404.
+        val asset = cache[path] ?: return@get
+        val variant = asset.negotiate(call.request.header(HttpHeaders.AcceptEncoding))
+
+        call.response.header(HttpHeaders.ETag, variant.etag)
+        call.response.header(HttpHeaders.CacheControl, cache.cacheControl)
+        call.response.header(HttpHeaders.Vary, HttpHeaders.AcceptEncoding)
+        if (matches(call.request.header(HttpHeaders.IfNoneMatch), variant.etag)) {
+            call.respond(HttpStatusCode.NotModified)
+            return@get
+        }
+        variant.encoding?.let { call.response.header(HttpHeaders.ContentEncoding, it) }
+        call.respondBytes(variant.bytes, asset.contentType)
+    }
+}
+
+/**
+ * Checks whether an `If-None-Match` header, which may list several ETags, matches an [etag].
+ */
+private fun matches(ifNoneMatch: String?, etag: String): Boolean =
+    ifNoneMatch != null && ifNoneMatch.split(',').any { it.trim().let { tag -> tag == etag || tag == "*" } }
+
+private const val INDEX = "index.html"
@@ -0,0 +1,24 @@
+package application.assets
+
+import java.nio.file.Path
+
+/**
+ * Holds the settings of a [StaticAssetCache].
+ * @property resource The classpath directory the assets are loaded from, unless a [directory] is set.
+ * @property directory A filesystem directory to load the assets from instead, e.g. the build output in development.
+ * @property reload Whether to reload the assets of the [directory] when its files change.
+ * @property maxAgeSeconds How long clients can use an asset without revalidating it. With 0, clients revalidate it
+ * on every use, which is cheap thanks to the ETags, and the only safe choice for files without a content hash
+ * in their name.
+ */
+data class StaticAssetsConfig(
+    val resource: String = "web",
+    val directory: Path? = null,
+    val reload: Boolean = false,
+    val maxAgeSeconds: Long = 0,
+) {
+    init {
+        require(maxAgeSeconds >= 0) { "maxAgeSeconds must not be negative" }
+        require(!reload || directory != null) { "reload requires a directory" }
+    }
+}
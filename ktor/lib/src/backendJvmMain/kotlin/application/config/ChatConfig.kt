@@ -0,0 +1,196 @@
+package application.config
+
+import application.assets.StaticAssetsConfig
+import application.engine.EngineConfig
+import application.engine.ServerEngine
+import application.monitoring.AccessLogConfig
+import application.plugins.WebSocketCompressionConfig
+import application.server.ChatServerConfig
+import application.server.admission.AdmissionConfig
+import application.server.cluster.ClusterConfig
+import application.server.coalescing.CoalescingConfig
+import application.server.ingress.IngressLimitConfig
+import application.server.ingress.IngressPolicy
+import application.server.log.MessageLogConfig
+import application.server.outbound.OverflowPolicy
+import application.server.search.SearchConfig
+import application.server.snapshot.SnapshotConfig
+import io.ktor.server.config.*
+import java.net.InetSocketAddress
+import java.nio.file.Paths
+
+/**
+ * Reads the `chat` section of the application configuration (see `application.conf`).
+ * Missing properties fall back to the defaults of [ChatServerConfig].
+ */
+fun ApplicationConfig.chatServerConfig(): ChatServerConfig {
+    val defaults = ChatServerConfig()
+    return ChatServerConfig(
+        outboundCapacity = int("chat.outbound.capacity") ?: defaults.outboundCapacity,
+        overflowPolicy = string("chat.outbound.overflow")?.let(OverflowPolicy::parse) ?: defaults.overflowPolicy,
+        fanOutShards = int("chat.fanout.shards") ?: defaults.fanOutShards,
+        fanOutParallelism = int("chat.fanout.parallelism") ?: defaults.fanOutParallelism,
+        parallelFanOutThreshold = int("chat.fanout.threshold") ?: defaults.parallelFanOutThreshold,
+        historyCapacity = int("chat.history.capacity") ?: defaults.historyCapacity,
+        replayBatchSize = int("chat.history.replayBatchSize") ?: defaults.replayBatchSize,
+        messageLog = messageLogConfig(),
+        ingress = ingressLimitConfig(),
+        coalescing = coalescingConfig(),
+        search = searchConfig(),
+        snapshot = snapshotConfig(),
+        admission = admissionConfig(),
+    )
+}
+
+/**
+ * Reads the `chat.admission` section, which caps the websocket connections when it has a `maxConnections`.
+ */
+private fun ApplicationConfig.admissionConfig(): AdmissionConfig? {
+    val maxConnections = int("chat.admission.maxConnections") ?: return null
+    val defaults = AdmissionConfig(maxConnections)
+    return defaults.copy(
+        maxConnectionsPerSession = int("chat.admission.maxConnectionsPerSession")
+            ?: defaults.maxConnectionsPerSession,
+        queueCapacity = int("chat.admission.queueCapacity") ?: defaults.queueCapacity,
+        queueTimeoutMillis = string("chat.admission.queueTimeoutMillis")?.toLong() ?: defaults.queueTimeoutMillis,
+        retryAfterSeconds = int("chat.admission.retryAfterSeconds") ?: defaults.retryAfterSeconds,
+    )
+}
+
+/**
+ * Reads the `chat.snapshot` section, which enables the snapshots of the server when it has a `file`.
+ */
+private fun ApplicationConfig.snapshotConfig(): SnapshotConfig? {
+    val file = string("chat.snapshot.file") ?: return null
+    val defaults = SnapshotConfig(Paths.get(file))
+    return defaults.copy(
+        intervalMillis = string("chat.snapshot.intervalSeconds")?.toLong()?.times(1000) ?: defaults.intervalMillis,
+        nameTtlMillis = string("chat.snapshot.nameTtlHours")?.toLong()?.times(60 * 60 * 1000) ?: defaults.nameTtlMillis,
+    )
+}
+
+/**
+ * Reads the `chat.search` section, which enables searching the latest messages when it has a `window`.
+ */
+private fun ApplicationConfig.searchConfig(): SearchConfig? {
+    val window = int("chat.search.window") ?: return null
+    val defaults = SearchConfig(window)
+    return defaults.copy(maxResults = int("chat.search.maxResults") ?: defaults.maxResults)
+}
+
+/**
+ * Reads the `chat.coalescing` section, which enables sending messages in batches when it has a `windowMillis`.
+ */
+private fun ApplicationConfig.coalescingConfig(): CoalescingConfig? {
+    val window = string("chat.coalescing.windowMillis")?.toLong() ?: return null
+    val defaults = CoalescingConfig(window)
+    return defaults.copy(maxBatchSize = int("chat.coalescing.maxBatchSize") ?: defaults.maxBatchSize)
+}
+
+/**
+ * Reads the `chat.ingress` section, which enables the rate limit of received frames when it has a `rate`.
+ */
+private fun ApplicationConfig.ingressLimitConfig(): IngressLimitConfig? {
+    val rate = string("chat.ingress.rate")?.toDouble() ?: return null
+    val defaults = IngressLimitConfig(rate)
+    return defaults.copy(
+        burst = int("chat.ingress.burst") ?: defaults.burst,
+        policy = string("chat.ingress.policy")?.let(IngressPolicy::parse) ?: defaults.policy,
+    )
+}
+
+/**
+ * Reads the `chat.log` section, which enables the persistent message log when it has a `directory`.
+ */
+private fun ApplicationConfig.messageLogConfig(): MessageLogConfig? {
+    val directory = string("chat.log.directory") ?: return null
+    val defaults = MessageLogConfig(Paths.get(directory))
+    return defaults.copy(
+        segmentBytes = int("chat.log.segmentBytes") ?: defaults.segmentBytes,
+        indexIntervalBytes = int("chat.log.indexIntervalBytes") ?: defaults.indexIntervalBytes,
+        retainedSegments = int("chat.log.retainedSegments") ?: defaults.retainedSegments,
+        replayLimit = int("chat.log.replayLimit") ?: defaults.replayLimit,
+    )
+}
+
+/**
+ * Reads the `chat.compression` section, which enables the compression of websocket frames when `enabled` is true.
+ */
+fun ApplicationConfig.webSocketCompressionConfig(): WebSocketCompressionConfig? {
+    if (string("chat.compression.enabled")?.toBoolean() != true) return null
+    val defaults = WebSocketCompressionConfig()
+    return defaults.copy(
+        level = int("chat.compression.level") ?: defaults.level,
+        minFrameBytes = int("chat.compression.minFrameBytes") ?: defaults.minFrameBytes,
+        contextTakeover = string("chat.compression.contextTakeover")?.toBoolean() ?: defaults.contextTakeover,
+    )
+}
+
+/**
+ * Reads the `chat.assets` section, which enables serving the static assets from memory when `cache` is true.
+ */
+fun ApplicationConfig.staticAssetsConfig(): StaticAssetsConfig? {
+    if (string("chat.assets.cache")?.toBoolean() != true) return null
+    val defaults = StaticAssetsConfig()
+    return defaults.copy(
+        directory = string("chat.assets.directory")?.let { Paths.get(it) },
+        reload = string("chat.assets.reload")?.toBoolean() ?: defaults.reload,
+        maxAgeSeconds = string("chat.assets.maxAgeSeconds")?.toLong() ?: defaults.maxAgeSeconds,
+    )
+}
+
+/**
+ * Reads the `chat.accessLog` section, which replaces the synchronous call logging with sampled access records written
+ * in the background when `enabled` is true.
+ */
+fun ApplicationConfig.accessLogConfig(): AccessLogConfig? {
+    if (string("chat.accessLog.enabled")?.toBoolean() != true) return null
+    val defaults = AccessLogConfig()
+    return defaults.copy(
+        capacity = int("chat.accessLog.capacity") ?: defaults.capacity,
+        sampleRate = string("chat.accessLog.sampleRate")?.toDouble() ?: defaults.sampleRate,
+        routeSampleRates = propertyOrNull("chat.accessLog.routes")?.getList().orEmpty().associate { route ->
+            route.substringBeforeLast('=') to route.substringAfterLast('=').toDouble()
+        },
+        slowCallMillis = string("chat.accessLog.slowCallMillis")?.toLong() ?: defaults.slowCallMillis,
+    )
+}
+
+/**
+ * Reads the `ktor.deployment` section, which chooses the engine and sizes its thread groups.
+ * Missing properties fall back to the defaults of [EngineConfig].
+ */
+fun ApplicationConfig.engineConfig(): EngineConfig {
+    val defaults = EngineConfig()
+    return EngineConfig(
+        engine = string("ktor.deployment.engine")?.let(ServerEngine::parse) ?: defaults.engine,
+        host = string("ktor.deployment.host") ?: defaults.host,
+        port = int("ktor.deployment.port") ?: defaults.port,
+        connectionGroupSize = int("ktor.deployment.connectionGroupSize"),
+        workerGroupSize = int("ktor.deployment.workerGroupSize"),
+        callGroupSize = int("ktor.deployment.callGroupSize"),
+    )
+}
+
+internal fun ApplicationConfig.string(path: String): String? =
+    propertyOrNull(path)?.getString()
+
+internal fun ApplicationConfig.int(path: String): Int? =
+    string(path)?.toInt()
+
+/**
+ * Reads the `chat.cluster` section, which enables the cluster mode when it has a `node` ID.
+ */
+fun ApplicationConfig.clusterConfig(): ClusterConfig? {
+    val node = string("chat.cluster.node") ?: return null
+    val defaults = ClusterConfig(node, port = 0, peers = emptyList())
+    return defaults.copy(
+        host = string("chat.cluster.host") ?: defaults.host,
+        port = int("chat.cluster.port") ?: error("chat.cluster.port is required"),
+        peers = propertyOrNull("chat.cluster.peers")?.getList().orEmpty().map { peer ->
+            InetSocketAddress(peer.substringBeforeLast(':'), peer.substringAfterLast(':').toInt())
+        },
+        batchWindowMillis = string("chat.cluster.batchWindowMillis")?.toLong() ?: defaults.batchWindowMillis,
+        maxBatchSize = int("chat.cluster.maxBatchSize") ?: defaults.maxBatchSize,
+    )
+}
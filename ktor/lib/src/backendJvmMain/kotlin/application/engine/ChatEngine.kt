@@ -0,0 +1,67 @@
+package application.engine
+
+import io.ktor.server.application.*
+import io.ktor.server.cio.*
+import io.ktor.server.config.*
+import io.ktor.server.engine.*
+import io.ktor.server.netty.*
+import kotlinx.coroutines.ExecutorCoroutineDispatcher
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.withContext
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Creates the [engine][EngineConfig.engine] serving the application, with its thread groups sized as configured.
+ * The modules are the ones listed in the `ktor.application.modules` of the [config], plus the given [modules].
+ */
+fun chatEngine(
+    config: ApplicationConfig,
+    engine: EngineConfig,
+    modules: List<Application.() -> Unit> = emptyList(),
+): ApplicationEngine {
+    val dispatcher = if (engine.engine == ServerEngine.VIRTUAL_THREADS) virtualThreadDispatcher() else null
+    val environment = applicationEngineEnvironment {
+        this.config = config
+        // Installed first, so the calls run on their virtual thread through all the other plugins.
+        dispatcher?.let { module { handleCallsOn(it) } }
+        modules.forEach { module(it) }
+        connector {
+            host = engine.host
+            port = engine.port
+        }
+    }
+    dispatcher?.let { environment.monitor.subscribe(ApplicationStopped) { _ -> it.close() } }
+
+    fun ApplicationEngine.Configuration.threadGroups() {
+        engine.connectionGroupSize?.let { connectionGroupSize = it }
+        engine.workerGroupSize?.let { workerGroupSize = it }
+        engine.callGroupSize?.let { callGroupSize = it }
+    }
+    return when (engine.engine) {
+        ServerEngine.CIO -> embeddedServer(CIO, environment) { threadGroups() }
+        ServerEngine.NETTY, ServerEngine.VIRTUAL_THREADS -> embeddedServer(Netty, environment) { threadGroups() }
+    }
+}
+
+/**
+ * Moves the handling of each call, from its first plugin to its response, to a coroutine of a [dispatcher].
+ */
+private fun Application.handleCallsOn(dispatcher: ExecutorCoroutineDispatcher) {
+    intercept(ApplicationCallPipeline.Setup) {
+        withContext(dispatcher) { proceed() }
+    }
+}
+
+/**
+ * Creates a dispatcher starting a virtual thread per task. The application targets Java 8,
+ * so the executor is looked up at runtime, failing unless it runs on Java 21 or newer.
+ */
+private fun virtualThreadDispatcher(): ExecutorCoroutineDispatcher {
+    val executor = try {
+        Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor").invoke(null) as ExecutorService
+    } catch (e: NoSuchMethodException) {
+        throw IllegalStateException("The virtual-threads engine needs Java 21 or newer", e)
+    }
+    return executor.asCoroutineDispatcher()
+}
@@ -0,0 +1,27 @@
+package application.engine
+
+/**
+ * Holds the settings of the engine serving the application.
+ * @property engine The engine to use.
+ * @property host The address to listen on.
+ * @property port The port to listen on, or 0 for any free port.
+ * @property connectionGroupSize The number of threads accepting connections, or null for the engine's default.
+ * @property workerGroupSize The number of threads reading and writing connections, or null for the engine's default.
+ * @property callGroupSize The number of threads handling calls, or null for the engine's default.
+ * Calls are not handled by these threads with [ServerEngine.VIRTUAL_THREADS].
+ */
+data class EngineConfig(
+    val engine: ServerEngine = ServerEngine.NETTY,
+    val host: String = "0.0.0.0",
+    val port: Int = 8080,
+    val connectionGroupSize: Int? = null,
+    val workerGroupSize: Int? = null,
+    val callGroupSize: Int? = null,
+) {
+    init {
+        require(port in 0..65535) { "port must be between 0 and 65535" }
+        require(listOfNotNull(connectionGroupSize, workerGroupSize, callGroupSize).all { it > 0 }) {
+            "thread group sizes must be positive"
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package application.engine
+
+/**
+ * Defines which engine serves the application.
+ */
+enum class ServerEngine {
+    /**
+     * Netty, with its own event loop groups to accept connections, to read and write them and to handle the calls.
+     */
+    NETTY,
+
+    /**
+     * The coroutine-based CIO engine, lighter than Netty but without its native transports.
+     */
+    CIO,
+
+    /**
+     * Netty, but handling each call on its own virtual thread instead of the call group, which needs Java 21.
+     */
+    VIRTUAL_THREADS;
+
+    companion object {
+        /**
+         * Parses an engine from its configuration name, e.g. `virtual-threads`.
+         */
+        fun parse(value: String): ServerEngine =
+            valueOf(value.trim().uppercase().replace('-', '_'))
+    }
+}
@@ -0,0 +1,139 @@
+package application.monitoring
+
+import io.ktor.server.application.*
+import io.ktor.server.application.hooks.*
+import io.ktor.server.request.*
+import io.ktor.util.*
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.LockSupport
+import kotlin.concurrent.thread
+
+/**
+ * Logs the calls as structured (JSON) access records, without blocking them: each call only writes a record to an
+ * [AccessLogRing], and a background thread formats and logs the records to the `access` logger.
+ * Calls are sampled by path, but server errors and slow calls are always logged.
+ */
+val AccessLog = createApplicationPlugin("AccessLog", ::AccessLogPluginConfig) {
+    val config = pluginConfig.config
+    val ring = AccessLogRing(config.capacity)
+    val sampler = AccessLogSampler(config)
+    val slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.slowCallMillis)
+    val writer = AccessLogWriter(ring, LoggerFactory.getLogger("access"))
+
+    on(CallSetup) { call ->
+        call.attributes.put(StartKey, System.nanoTime())
+    }
+
+    on(ResponseSent) { call ->
+        val start = call.attributes.getOrNull(StartKey) ?: return@on
+        val duration = System.nanoTime() - start
+        val status = call.response.status()?.value ?: 0
+        val path = call.request.path()
+        if (status >= 500 || duration >= slowCallNanos || sampler.sample(path)) {
+            if (ring.offer(System.currentTimeMillis(), call.request.httpMethod.value, path, status, duration)) {
+                writer.signal()
+            }
+        }
+    }
+
+    on(MonitoringEvent(ApplicationStopped)) {
+        writer.close()
+    }
+}
+
+class AccessLogPluginConfig {
+    var config = AccessLogConfig()
+}
+
+private val StartKey = AttributeKey<Long>("AccessLogStart")
+
+/**
+ * Decides which calls are logged according to the sample rate of their path.
+ */
+internal class AccessLogSampler(config: AccessLogConfig) {
+
+    private val defaultRate = config.sampleRate
+    private val routes = config.routeSampleRates.entries.sortedByDescending { it.key.length }.map { it.key to it.value }
+
+    fun sample(path: String): Boolean {
+        var rate = defaultRate
+        for ((prefix, routeRate) in routes) {
+            if (path.startsWith(prefix)) {
+                rate = routeRate
+                break
+            }
+        }
+        return rate >= 1.0 || rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate
+    }
+}
+
+/**
+ * Drains an [AccessLogRing] to a [logger] in a background thread, formatting each record as a JSON line.
+ * The thread parks while the ring is empty, and is unparked by the [signal] of the next record.
+ */
+internal class AccessLogWriter(private val ring: AccessLogRing, private val logger: Logger) {
+
+    @Volatile
+    private var running = true
+
+    @Volatile
+    private var parked = false
+
+    private val line = StringBuilder()
+
+    private val thread = thread(name = "access-log-writer", isDaemon = true) {
+        while (running) {
+            if (ring.drain(::write) > 0) continue
+            parked = true
+            // Drains again once parked is set, since a record published before it was set did not unpark the thread.
+            if (ring.drain(::write) == 0 && running) LockSupport.park(this)
+            parked = false
+        }
+        ring.drain(::write)
+    }
+
+    /**
+     * Wakes the thread up if it is waiting for records, to be called once a record is written to the ring.
+     */
+    fun signal() {
+        if (parked) LockSupport.unpark(thread)
+    }
+
+    private fun write(record: AccessRecord) {
+        line.setLength(0)
+        line.append("{\"timestamp\":").append(record.timestampMillis)
+            .append(",\"method\":\"").append(record.method)
+            .append("\",\"path\":\"")
+        escape(record.path)
+        line.append("\",\"status\":").append(record.status)
+            .append(",\"durationMicros\":").append(TimeUnit.NANOSECONDS.toMicros(record.durationNanos))
+            .append('}')
+        logger.info(line.toString())
+    }
+
+    private fun escape(value: String) {
+        for (char in value) {
+            when {
+                char == '"' || char == '\\' -> line.append('\\').append(char)
+                char < ' ' -> line.append("\\u%04x".format(char.code))
+                else -> line.append(char)
+            }
+        }
+    }
+
+    /**
+     * Stops the writer once the records already in the ring are logged.
+     */
+    fun close() {
+        running = false
+        LockSupport.unpark(thread)
+        thread.join(CLOSE_TIMEOUT_MILLIS)
+    }
+
+    private companion object {
+        const val CLOSE_TIMEOUT_MILLIS = 1000L
+    }
+}
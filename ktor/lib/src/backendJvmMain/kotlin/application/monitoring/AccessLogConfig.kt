@@ -0,0 +1,23 @@
+package application.monitoring
+
+/**
+ * Holds the settings of the [AccessLog] plugin.
+ * @property capacity The number of records the ring buffer holds before new records are dropped.
+ * @property sampleRate The fraction of the calls logged, from 0 to 1, for the paths without a rate of their own.
+ * @property routeSampleRates The sample rates of the paths starting with each prefix, the longest prefix wins.
+ * @property slowCallMillis The duration from which calls are always logged, whatever their sample rate.
+ */
+data class AccessLogConfig(
+    val capacity: Int = 8192,
+    val sampleRate: Double = 1.0,
+    val routeSampleRates: Map<String, Double> = emptyMap(),
+    val slowCallMillis: Long = 500,
+) {
+    init {
+        require(capacity > 0) { "capacity must be positive" }
+        require(sampleRate in 0.0..1.0 && routeSampleRates.values.all { it in 0.0..1.0 }) {
+            "sample rates must be between 0 and 1"
+        }
+        require(slowCallMillis >= 0) { "slowCallMillis must not be negative" }
+    }
+}
@@ -0,0 +1,68 @@
+package application.monitoring
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * A bounded ring buffer of [AccessRecord]s with many writers (the calls) and a single reader (the writer thread).
+ *
+ * Writers claim a sequence with a CAS, but only when its slot was already read, fill the slot in place and publish it
+ * by setting its sequence. So writers never wait for each other nor for the reader: when the ring is full,
+ * records are [dropped] instead.
+ */
+class AccessLogRing(val capacity: Int) {
+
+    private val slots = Array(capacity) { AccessRecord() }
+    private val next = AtomicLong()
+    private val read = AtomicLong()
+    private val droppedRecords = LongAdder()
+
+    /**
+     * The number of records dropped because the ring was full.
+     */
+    val dropped: Long
+        get() = droppedRecords.sum()
+
+    /**
+     * Writes a record, or drops it if the ring is full.
+     * @return whether the record was written.
+     */
+    fun offer(timestampMillis: Long, method: String, path: String, status: Int, durationNanos: Long): Boolean {
+        var sequence: Long
+        do {
+            sequence = next.get()
+            if (sequence - read.get() >= capacity) {
+                droppedRecords.increment()
+                return false
+            }
+        } while (!next.compareAndSet(sequence, sequence + 1))
+
+        val slot = slots[(sequence % capacity).toInt()]
+        slot.timestampMillis = timestampMillis
+        slot.method = method
+        slot.path = path
+        slot.status = status
+        slot.durationNanos = durationNanos
+        slot.sequence = sequence
+        return true
+    }
+
+    /**
+     * Hands the published records to an [action] in order, and returns how many were handed.
+     * The record must not be kept after the action returns, since its slot is reused. Only one thread may drain.
+     */
+    fun drain(action: (AccessRecord) -> Unit): Int {
+        var count = 0
+        var sequence = read.get()
+        while (true) {
+            val slot = slots[(sequence % capacity).toInt()]
+            // Either no more records, or the next one is still being written.
+            if (slot.sequence != sequence) break
+            action(slot)
+            sequence++
+            count++
+            read.set(sequence)
+        }
+        return count
+    }
+}
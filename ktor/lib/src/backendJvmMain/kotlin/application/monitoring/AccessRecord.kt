@@ -0,0 +1,23 @@
+package application.monitoring
+
+/**
+ * A slot of the [AccessLogRing], reused for every record written to it, so logging a call does not allocate.
+ */
+class AccessRecord {
+    /**
+     * The sequence of the record held by this slot, published once all the other fields are written.
+     */
+    @Volatile
+    internal var sequence = -1L
+
+    var timestampMillis = 0L
+        internal set
+    var method = ""
+        internal set
+    var path = ""
+        internal set
+    var status = 0
+        internal set
+    var durationNanos = 0L
+        internal set
+}
@@ -0,0 +1,40 @@
+package application.plugins
+
+import application.models.ChatSession
+import application.server.admission.AdmissionController
+import io.ktor.http.*
+import io.ktor.server.application.*
+import io.ktor.server.response.*
+import io.ktor.server.routing.*
+import io.ktor.server.sessions.*
+import io.ktor.util.*
+
+/**
+ * The admission of the socket of a call, released by the socket handler once the socket closes.
+ */
+val AdmissionLeaseKey = AttributeKey<AdmissionController.Lease>("AdmissionLease")
+
+/**
+ * Defines an interceptor admitting the websocket upgrades through a [controller], to be installed after
+ * [configureInterceptors], which sets the session.
+ * Upgrades that are not admitted get a `503 Service Unavailable` with a `Retry-After` header, before upgrading.
+ */
+fun Route.configureAdmission(controller: AdmissionController) {
+    intercept(ApplicationCallPipeline.Plugins) {
+        val session = call.sessions.get<ChatSession>() ?: return@intercept
+        val lease = controller.admit(session.id)
+        if (lease == null) {
+            call.response.header(HttpHeaders.RetryAfter, controller.retryAfterSeconds)
+            call.respond(HttpStatusCode.ServiceUnavailable, "Too many connections, retry later")
+            finish()
+            return@intercept
+        }
+        call.attributes.put(AdmissionLeaseKey, lease)
+        try {
+            proceed()
+        } finally {
+            // Calls that did not upgrade have no socket to release it when closed.
+            if (call.response.status() != HttpStatusCode.SwitchingProtocols) lease.release()
+        }
+    }
+}
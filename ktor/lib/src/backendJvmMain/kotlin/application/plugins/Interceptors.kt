@@ -1,12 +1,13 @@
 import application.models.ChatSession
 import io.ktor.server.application.*
+import io.ktor.server.routing.*
 import io.ktor.server.sessions.*
 import io.ktor.util.*
 
 /**
- * Defines interceptors to be installed in the application.
+ * Defines interceptors to be installed in the routes that need a session, along with [configureSessions].
  */
-fun Application.configureInterceptors() {
+fun Route.configureInterceptors() {
     // This adds an interceptor that will create a specific session in each
     // request if no session is available already.
     intercept(ApplicationCallPipeline.Plugins) {
@@ -1,5 +1,7 @@
 package application.plugins
 
+import application.monitoring.AccessLog
+import application.monitoring.AccessLogConfig
 import io.ktor.server.application.*
 import io.ktor.server.plugins.callloging.*
 import io.ktor.server.request.*
@@ -7,12 +9,18 @@ import org.slf4j.event.Level
 
 /**
  * This installs the Monitoring plugin to the application, which adds logging information to requests.
+ * Given an [accessLog] configuration, calls are logged asynchronously and sampled by the [AccessLog] plugin instead.
  */
-fun Application.configureMonitoring() {
+fun Application.configureMonitoring(accessLog: AccessLogConfig? = null) {
+    if (accessLog != null) {
+        install(AccessLog) {
+            config = accessLog
+        }
+        return
+    }
     install(CallLogging) {
         level = Level.INFO
         // This uses the logger to log calls (request/response)
         filter { call -> call.request.path().startsWith("/") }
     }
 }
-
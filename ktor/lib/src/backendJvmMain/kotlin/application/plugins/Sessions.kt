@@ -1,15 +1,17 @@
 package application.plugins
 
 import application.models.ChatSession
-import io.ktor.server.application.*
+import io.ktor.server.routing.*
 import io.ktor.server.sessions.*
 
 private const val NAME = "SESSION"
 
 /**
  * Enables the use of sessions to keep information between requests/refreshes of the browser.
+ * Sessions are only installed in the routes that need them, so the rest (e.g. static resources) do not pay for
+ * reading and writing the session cookie.
  */
-fun Application.configureSessions() =
+fun Route.configureSessions() =
     install(Sessions) {
         cookie<ChatSession>(NAME)
-    }
\ No newline at end of file
+    }
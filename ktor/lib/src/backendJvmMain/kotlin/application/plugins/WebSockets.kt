@@ -2,13 +2,45 @@ package application.plugins
 
 import io.ktor.server.application.*
 import io.ktor.server.websocket.*
+import io.ktor.websocket.*
 import java.time.Duration
+import java.util.zip.Deflater
+
+/**
+ * Holds the settings of the `permessage-deflate` compression of the frames sent to the clients that support it.
+ * @property level The compression level, from 0 (none) to 9 (best), or -1 for the default of the [Deflater].
+ * @property minFrameBytes The size from which frames are compressed. Smaller frames barely shrink, if at all,
+ * so they are sent as they are to save CPU.
+ * @property contextTakeover Whether each connection keeps its compression context from one frame to the next,
+ * so repeated content across messages (e.g. names) compresses better, at the cost of memory per connection.
+ */
+data class WebSocketCompressionConfig(
+    val level: Int = Deflater.DEFAULT_COMPRESSION,
+    val minFrameBytes: Int = 256,
+    val contextTakeover: Boolean = true,
+) {
+    init {
+        require(level in -1..9) { "level must be between -1 and 9" }
+        require(minFrameBytes >= 0) { "minFrameBytes must not be negative" }
+    }
+}
 
 /**
  * This installs the WebSockets plugin to the application, which adds support for WebSockets.
+ * Frames are compressed according to the [compression] settings, if any.
  */
-fun Application.configureWebSockets() {
+fun Application.configureWebSockets(compression: WebSocketCompressionConfig? = null) {
     install(WebSockets) {
         pingPeriod = Duration.ofMinutes(1)
+        if (compression != null) {
+            extensions {
+                install(WebSocketDeflateExtension) {
+                    compressionLevel = compression.level
+                    compressIfBiggerThan(compression.minFrameBytes)
+                    serverNoContextTakeover = !compression.contextTakeover
+                    clientNoContextTakeover = !compression.contextTakeover
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
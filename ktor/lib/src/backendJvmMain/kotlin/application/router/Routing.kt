@@ -1,29 +1,56 @@
 package application.router
 
+import application.assets.StaticAssetCache
+import application.assets.staticAssets
+import application.plugins.configureAdmission
+import application.plugins.configureSessions
 import application.server.ChatServer
 import application.server.WebSocketServerHandler
+import application.server.metrics.prometheusMetrics
 import io.ktor.http.*
 import io.ktor.server.application.*
 import io.ktor.server.http.content.*
 import io.ktor.server.response.*
 import io.ktor.server.routing.*
 import io.ktor.server.websocket.*
+import configureInterceptors
+import protocol.ChatProtocol
 
 /**
  * This function is an extension function for the [Application] class that allows to configure the routing for the
  * application.
+ * The static resources are served from the [assets] cache if enabled, or read from the classpath on each request.
  */
-fun Application.configureRouting(server: ChatServer) {
+fun Application.configureRouting(server: ChatServer, assets: StaticAssetCache? = null) {
     routing {
         // Defines a websocket `/ws` route that allows a protocol upgrade to convert a HTTP request/response request
         // into a bidirectional packetized connection.
-        webSocket("/ws") {
-            WebSocketServerHandler(server).apply { handleChatSession() }
+        route("/ws") {
+            // Only the chat needs a session, so the other routes skip reading and writing the session cookie.
+            configureSessions()
+            configureInterceptors()
+            // Upgrades above the connection caps are rejected before upgrading, with a hint of when to retry.
+            server.admission?.let { configureAdmission(it) }
+            // Clients asking for the binary subprotocol at the upgrade get the binary protocol, the rest the text one.
+            webSocket(protocol = ChatProtocol.BINARY) {
+                WebSocketServerHandler(server).apply { handleChatSession(binary = true) }
+            }
+            webSocket {
+                WebSocketServerHandler(server).apply { handleChatSession() }
+            }
+        }
+        // Exposes the metrics of the chat server to be scraped by Prometheus.
+        get("/metrics") {
+            call.respondText(server.prometheusMetrics(), ContentType.parse("text/plain; version=0.0.4"))
         }
         get("/hello") {
             call.respondText("HELLO WORLD!", contentType = ContentType.Text.Plain)
         }
         // This defines a block of static resources for the '/' path (since no path is specified and we start at '/')
-        staticResources("/", "web")
+        if (assets != null) {
+            staticAssets(assets)
+        } else {
+            staticResources("/", "web")
+        }
     }
 }
\ No newline at end of file
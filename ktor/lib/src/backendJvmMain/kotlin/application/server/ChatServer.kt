@@ -1,17 +1,69 @@
 package application.server
 
+import application.server.admission.AdmissionController
+import application.server.admission.AdmissionMetrics
+import application.server.cluster.ClusterBus
+import application.server.cluster.ClusterEvent
+import application.server.coalescing.BroadcastCoalescer
+import application.server.coalescing.MessageBatch
+import application.server.fanout.FanOutEngine
+import application.server.ingress.IngressLimiter
+import application.server.ingress.IngressMetrics
+import application.server.log.MessageLog
+import application.server.members.MemberRegistry
+import application.server.metrics.ChatMetrics
+import application.server.outbound.OutboundMetrics
+import application.server.outbound.OutboundQueue
+import application.server.outbound.SharedFrame
+import application.server.presence.PresenceIndex
+import application.server.rooms.Room
+import application.server.rooms.RoomRegistry
+import application.server.search.SearchIndex
+import application.server.snapshot.ChatSnapshot
+import application.server.snapshot.Snapshotter
 import io.ktor.websocket.*
-import kotlinx.coroutines.channels.ClosedSendChannelException
-import java.util.*
+import protocol.ChatRecordReader
+import protocol.MessageType
+import java.io.Closeable
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * This class is in charge of the chat server logic.
  * It contains handlers for events and commands to send messages to specific users on the server.
+ *
+ * In cluster mode, the server publishes the events of its members to a [bus], and fans out the events it receives
+ * from the other nodes to its own members.
  */
-class ChatServer {
+class ChatServer(
+    private val config: ChatServerConfig = ChatServerConfig(),
+    private val bus: ClusterBus? = null,
+) : Closeable {
+
+    /**
+     * The depth and eviction counters of the outbound queues of every socket.
+     */
+    val outboundMetrics = OutboundMetrics()
+
+    /**
+     * The counters and latency histograms of the chat traffic.
+     */
+    val metrics = ChatMetrics()
+
+    /**
+     * The counters of the frames received above the rate limit of their socket.
+     */
+    val ingressMetrics = IngressMetrics()
+
+    /**
+     * The counters of the websocket upgrades accepted, queued and rejected by the [admission] controller.
+     */
+    val admissionMetrics = AdmissionMetrics()
+
+    /**
+     * Admits the websocket upgrades within the connection caps, or null if they are not capped.
+     */
+    val admission = config.admission?.let { AdmissionController(it, admissionMetrics) }
 
     /**
      * The atomic counter used to get unique usernames based on the maximum users the server had.
@@ -19,88 +71,226 @@ class ChatServer {
     private val usersCounter = AtomicInteger()
 
     /**
-     * A concurrent map associating session IDs to usernames.
+     * The names restored from a snapshot of the members that did not join again yet, by session ID.
+     * They are dropped once not seen for the [time to live][application.server.snapshot.SnapshotConfig.nameTtlMillis]
+     * of the names, so sessions that never come back do not pile up.
+     */
+    private val restoredNames = ConcurrentHashMap<String, ChatSnapshot.Name>()
+
+    /**
+     * The names of the members of this node, by session ID, and of the other nodes, by `node/session ID`,
+     * which serializes the roster once per change.
+     * The changes of the members of this node are published while holding its lock, so a [ClusterEvent.Roster]
+     * is never published after a change it does not have yet.
+     */
+    private val presence = PresenceIndex()
+
+    /**
+     * The members of this node, each one with its name and its sockets, partitioned by session ID.
+     * The members are shared with the member index of the room each member is in.
      */
-    private val memberNames = ConcurrentHashMap<String, String>()
+    private val members = MemberRegistry(config.fanOutShards)
 
     /**
-     * Associates a session ID to a set of websockets.
-     * Since a browser is able to open several tabs and windows with the same cookies and thus the same session.
-     * There might be several opened sockets for the same client.
+     * Pushes broadcast messages to the sockets of all the members of a room.
      */
-    private val members = ConcurrentHashMap<String, MutableList<WebSocketSession>>()
+    private val fanOut = FanOutEngine(config.parallelFanOutThreshold, config.fanOutParallelism)
 
     /**
-     * A list of the latest messages sent to the server, so new members can have a bit context of what
+     * The rooms of the server. Each room has its own index of members, so a message only touches the sockets
+     * of its room, sharded so the [fanOut] can push a message to each shard concurrently.
+     * Each room also has its own ring of the latest messages, so new members can have a bit context of what
      * other people was talking about before joining.
+     * Messages are kept already encoded, so replaying them does not encode them again.
+     * If searching is enabled, each room has its own index of its latest messages too.
      */
-    private val lastMessages = LinkedList<String>()
+    private val rooms = RoomRegistry(config.fanOutShards, config.historyCapacity, config.search)
+
+    /**
+     * The persistent log of all the messages sent to the lobby, if enabled.
+     * It survives restarts and allows a socket to resume the history from the offset it already saw,
+     * since every lobby message is sent stamped with its offset.
+     */
+    private val messageLog = config.messageLog?.let { MessageLog(it) }
+
+    /**
+     * Groups the messages broadcast within a short window in a single frame per socket, if enabled.
+     */
+    private val coalescer = config.coalescing?.let {
+        BroadcastCoalescer(
+            it,
+            deliver = { room, frame -> broadcast(room, frame) },
+            flushed = { room, frame, history -> if (history) record(room, frame) },
+        )
+    }
+
+    /**
+     * Writes the snapshots of the server, if enabled.
+     */
+    private val snapshots: Snapshotter?
+
+    init {
+        // Restores the names and histories of the last snapshot, and warms up the lobby history with the tail
+        // of the log, stamped with their offsets, so they are not lost on a restart.
+        config.snapshot?.let { ChatSnapshot.read(it.file) }?.let(::restore)
+        messageLog?.tail(config.historyCapacity) { offset, payload ->
+            rooms.lobby.history.append(SharedFrame.copyOf(payload).at(offset))
+        }
+        snapshots = config.snapshot?.let { Snapshotter(it, ::snapshot) }
+        bus?.subscribe { onClusterEvent(it) }
+        // The nodes already running get connected, and send their rosters back.
+        publishRoster()
+    }
 
     /**
      * Handles that a member is identified by a session ID and a socket joined.
+     * If the message log is enabled, the socket can [resumeFrom] the offset of the first message it did not see yet.
+     * Sockets speaking the [binary] protocol get every message as binary records.
+     * The socket gets at most the latest [historyLimit] messages of the history, none if it is 0.
      */
-    suspend fun memberJoin(member: String, socket: WebSocketSession) {
-        // Checks if this user is already registered in the server and gives him/her a temporal name if required.
-        val name = memberNames.computeIfAbsent(member) { "user${usersCounter.incrementAndGet()}" }
+    suspend fun memberJoin(
+        member: String,
+        socket: WebSocketSession,
+        resumeFrom: Long? = null,
+        binary: Boolean = false,
+        historyLimit: Int? = null,
+    ) {
+        // Associates this socket to the member ID, registering the member with a temporal name if required.
+        // Sockets are not capped here, the [admission] controller caps them before upgrading when it is configured.
+        val queue = OutboundQueue(socket, config.outboundCapacity, config.overflowPolicy, outboundMetrics, binary)
+        val arrival = members.join(member, queue) { restoredNames.remove(member)?.name ?: newName() }
+        val name = arrival.member.name
+        synchronized(presence) {
+            presence.put(member, name)
+            if (arrival.first) bus?.publish(ClusterEvent.MemberJoined(bus.node, member, name))
+        }
+        metrics.socketOpened()
 
-        // Associates this socket to the member ID.
-        // Since iteration is likely to happen more frequently than adding new items,
-        // we use a `CopyOnWriteArrayList`.
-        // We could also control how many sockets we would allow per client here before appending it.
-        // But since this is a sample we are not doing it.
-        val list = members.computeIfAbsent(member) { CopyOnWriteArrayList() }
-        list.add(socket)
+        // A new member starts in the lobby, while another socket of a member joins the member's current room.
+        // The first socket of a member always enters it, even if a previous record of the same session is still
+        // leaving its room, e.g. on a page reload.
+        val room = if (arrival.first) {
+            rooms.enter(arrival.member, RoomRegistry.LOBBY).first
+        } else {
+            rooms.roomOf(member) ?: rooms.lobby
+        }
 
         // Only when joining the first socket for a member notifies the rest of the users.
-        if (list.size == 1) {
-            broadcast("server", "Member joined: $name.")
+        if (arrival.first) {
+            broadcast(room, "server", "Member joined: $name.")
+        }
+
+        // Sends the user the latest messages from this room to let the member have a bit context,
+        // in as few frames as the replay batch size allows.
+        // Resuming sockets get the messages they missed instead, copied from the mapped log files into their frames.
+        val replayStart = System.nanoTime()
+        val limit = historyLimit ?: Int.MAX_VALUE
+        val frames = if (messageLog != null && resumeFrom != null && room === rooms.lobby) {
+            val missed = ArrayList<SharedFrame>()
+            messageLog.read(resumeFrom, minOf(limit, messageLog.replayLimit)) { offset, payload ->
+                missed += SharedFrame.copyOf(payload).at(offset)
+            }
+            MessageBatch.chunked(missed, config.replayBatchSize)
+        } else {
+            room.replay(config.replayBatchSize, minOf(limit, config.historyCapacity))
+        }
+        frames.forEach(queue::offer)
+        metrics.replayLatency.recordSince(replayStart)
+    }
+
+    /**
+     * The number of members of this node with at least one open socket.
+     */
+    val memberCount: Int
+        get() = members.size
+
+    /**
+     * Creates the rate limiter of the frames received from a new socket, or null if they are not limited.
+     */
+    fun ingressLimiter(): IngressLimiter? =
+        config.ingress?.let { IngressLimiter(it, ingressMetrics) }
+
+    /**
+     * Handles a [member] identified by its session ID moving, with all its sockets, to the room named [to].
+     */
+    suspend fun memberMoved(member: String, to: String) {
+        val record = members[member] ?: return
+        if (rooms.roomOf(member)?.name == to) {
+            record.send(SharedFrame.message(MessageType.REPLY, "server::join", to, "Already in room $to"))
+            return
         }
+        val name = record.name
+        val (room, previous) = rooms.enter(record, to)
 
-        // Sends the user the latest messages from this server to let the member have a bit context.
-        val messages = synchronized(lastMessages) { lastMessages.toList() }
-        for (message in messages) {
-            socket.send(Frame.Text(message))
+        // Notifies both rooms about this change and gives the member a bit context of the new room.
+        previous?.let { broadcast(it, "server", "Member left: $name.") }
+        broadcast(room, "server", "Member joined: $name.")
+        val replayStart = System.nanoTime()
+        for (frame in room.replay(config.replayBatchSize)) {
+            record.send(frame)
         }
+        metrics.replayLatency.recordSince(replayStart)
     }
 
     /**
      * Handles a [member] identified by its session ID renaming [to] a specific name.
      */
     suspend fun memberRenamed(member: String, to: String) {
-        // Re-sets the member name.
-        val oldName = memberNames.put(member, to) ?: member
-        // Notifies everyone in the server about this change.
-        broadcast("server", "Member renamed from $oldName to $to")
+        // Re-sets the member name, unless another member already has it, since names address private messages.
+        val record = members[member] ?: return
+        val oldName = record.name
+        if (!members.rename(record, to)) {
+            record.send(SharedFrame.message(MessageType.REPLY, "server::help", "", "Name $to is already taken"))
+            return
+        }
+        synchronized(presence) {
+            presence.put(member, to)
+            bus?.publish(ClusterEvent.MemberRenamed(bus.node, member, to))
+        }
+        // Notifies everyone in the member's room about this change.
+        val room = rooms.roomOf(member) ?: return
+        broadcast(room, "server", "Member renamed from $oldName to $to")
     }
 
     /**
      * Handles that a [member] with a specific [socket] left the server.
      */
     suspend fun memberLeft(member: String, socket: WebSocketSession) {
-        // Removes the socket connection for this member
-        val connections = members[member]
-        connections?.remove(socket)
+        // Removes the socket connection for this member and stops its writer once the pending frames are flushed
+        val departure = members.leave(member, socket) ?: return
+        departure.queue.close()
+        metrics.socketClosed()
 
-        // If no more sockets are connected for this member, let's remove it from the server
-        // and notify the rest of the users about this event.
-        if (connections != null && connections.isEmpty()) {
-            val name = memberNames.remove(member) ?: member
-            broadcast("server", "Member left: $name.")
+        // If no more sockets are connected for this member, it is no longer in the server, so let's remove it from
+        // its room, and notify the rest of the users in that room about this event.
+        // A new socket of the same session may have created a new record meanwhile, which keeps its entries.
+        if (departure.last) {
+            val name = departure.member.name
+            synchronized(presence) {
+                if (members[member] == null) {
+                    presence.remove(member)
+                    bus?.publish(ClusterEvent.MemberLeft(bus.node, member))
+                }
+            }
+            val room = rooms.leave(departure.member) ?: return
+            broadcast(room, "server", "Member left: $name.")
         }
     }
 
     /**
-     * Handles the 'who' command by sending the member a list of all member names in the server.
+     * Handles the 'who' command by sending the member a list of all member names in the server (or cluster),
+     * along with the version of the roster. A member already holding the roster at a version [since] gets only
+     * the changes after it.
      */
-    suspend fun who(sender: String) {
-        members[sender]?.send(Frame.Text(memberNames.values.joinToString(prefix = "[server::who] ")))
+    suspend fun who(sender: String, since: Long? = null) {
+        members[sender]?.send(if (since == null) presence.roster() else presence.since(since))
     }
 
     /**
      * Handles the 'help' command by sending the member a list of available commands.
      */
     suspend fun help(sender: String) {
-        members[sender]?.send(Frame.Text("[server::help] Possible commands are: /user, /help and /who"))
+        members[sender]?.send(HELP)
     }
 
     /**
@@ -109,61 +299,211 @@ class ChatServer {
      * Both [recipient] and [sender] are identified by its session-id.
      */
     suspend fun sendTo(recipient: String, sender: String, message: String) {
-        members[recipient]?.send(Frame.Text("[$sender] $message"))
+        members[recipient]?.send(SharedFrame.message(MessageType.REPLY, sender, "", message))
+    }
+
+    /**
+     * Handles a private [message] sent from a [sender], identified by its session-id, to the member named [recipient],
+     * whatever its room. The message is encoded once and shared by the sockets of both members, so the sender's
+     * other tabs see it too.
+     */
+    suspend fun privateMessage(sender: String, recipient: String, message: String) {
+        val from = members[sender] ?: return
+        val to = members.named(recipient)
+        if (to == null) {
+            from.send(SharedFrame.message(MessageType.REPLY, "server::msg", "", "Unknown member $recipient"))
+            return
+        }
+        val frame = SharedFrame.message(MessageType.PRIVATE, "${from.name}::msg", to.name, message)
+        to.send(frame)
+        if (to !== from) from.send(frame)
+    }
+
+    /**
+     * Handles the 'search' command by sending the member the latest messages of its room holding all the terms of
+     * a [query], in a single frame.
+     */
+    suspend fun search(sender: String, query: String) {
+        val member = members[sender] ?: return
+        val room = rooms.roomOf(sender) ?: return
+        val hits = room.search?.search(query)
+        val reply = when {
+            hits == null -> SharedFrame.message(MessageType.REPLY, "server::search", "", "Search is disabled")
+            hits.isEmpty() -> SharedFrame.message(MessageType.REPLY, "server::search", "", "No messages for $query")
+            else -> MessageBatch.encode(
+                hits.map {
+                    SharedFrame.message(MessageType.REPLY, "server::search", room.name, "[${it.sender}] ${it.text}")
+                },
+            )
+        }
+        member.send(reply)
     }
 
     /**
-     * Handles a [message] sent from a [sender] by notifying the rest of the users.
+     * Handles a [message] sent from a [sender] by notifying the rest of the users in the sender's room.
      */
     suspend fun message(sender: String, message: String) {
-        // Pre-format the message to be send, to prevent doing it for all the users or connected sockets.
-        val name = memberNames[sender] ?: sender
-        val formatted = "[$name] $message"
-
-        // Sends this pre-formatted message to all the members in the server.
-        broadcast(formatted)
-
-        // Appends the message to the list of [lastMessages] and caps that collection to 100 items to prevent
-        // growing too much.
-        synchronized(lastMessages) {
-            lastMessages.add(formatted)
-            if (lastMessages.size > 100) {
-                lastMessages.removeFirst()
+        val room = rooms.roomOf(sender) ?: return
+
+        // Pre-format and encode the message to be send, to prevent doing it for all the users or connected sockets.
+        val name = members[sender]?.name ?: sender
+        val formatted = SharedFrame.message(MessageType.MESSAGE, name, room.name, message)
+        room.search?.add(name, message)
+
+        // Sends this pre-formatted message to all the members in the room, in this node and in the others.
+        deliver(room, formatted, history = true)
+        bus?.publish(ClusterEvent.Broadcast(bus.node, room.name, formatted, history = true))
+    }
+
+    /**
+     * Handles an [event] published by another node of the cluster, by applying it to the members of this node.
+     */
+    private suspend fun onClusterEvent(event: ClusterEvent) {
+        when (event) {
+            is ClusterEvent.Broadcast -> {
+                // Rooms only exist while they have members, so a room without local members can be skipped.
+                val room = rooms[event.room] ?: return
+                if (event.history) room.search?.let { index(it, event.frame) }
+                deliver(room, event.frame, event.history)
             }
+
+            is ClusterEvent.MemberJoined -> presence.put("${event.node}/${event.member}", event.name)
+            is ClusterEvent.MemberRenamed -> presence.put("${event.node}/${event.member}", event.name)
+            is ClusterEvent.MemberLeft -> presence.remove("${event.node}/${event.member}")
+            is ClusterEvent.Roster -> presence.replace(
+                "${event.node}/",
+                event.members.mapKeys { (member, _) -> "${event.node}/$member" },
+            )
+
+            // A node that just connected learns about the members of this node, and a node lost takes its members.
+            is ClusterEvent.NodeJoined -> publishRoster()
+            is ClusterEvent.NodeLeft -> presence.replace("${event.node}/", emptyMap())
         }
     }
 
     /**
-     * Sends a [message] to all the members in the server, including all the connections per member.
+     * Adds the messages of a [frame] broadcast by another node to a search [index], reading their sender and text
+     * from its records, since the frame is already encoded.
      */
-    private suspend fun broadcast(message: String) {
-        members.values.forEach { socket ->
-            socket.send(Frame.Text(message))
+    private fun index(index: SearchIndex, frame: SharedFrame) {
+        val reader = ChatRecordReader(frame.records())
+        while (reader.next()) {
+            if (reader.type == MessageType.MESSAGE) index.add(reader.sender(), reader.payload())
         }
     }
 
     /**
-     * Sends a [message] coming from a [sender] to all the members in the server, including all the connections per member.
+     * Publishes the names of all the members of this node, which replace the ones the other nodes know.
      */
-    private suspend fun broadcast(sender: String, message: String) {
-        val name = memberNames[sender] ?: sender
-        broadcast("[$name] $message")
+    private fun publishRoster() {
+        if (bus == null) return
+        synchronized(presence) {
+            bus.publish(ClusterEvent.Roster(bus.node, presence.local(separator = '/')))
+        }
     }
 
     /**
-     * Sends a [message] to a list of [this] [WebSocketSession].
+     * Generates the name of a new member. Each node counts its members on its own, so in cluster mode the name
+     * has the node ID too, to tell apart the members of different nodes.
      */
-    private suspend fun List<WebSocketSession>.send(frame: Frame) {
-        forEach {
-            try {
-                it.send(frame.copy())
-            } catch (t: Throwable) {
-                try {
-                    it.close(CloseReason(CloseReason.Codes.PROTOCOL_ERROR, ""))
-                } catch (ignore: ClosedSendChannelException) {
-                    // at some point it will get closed
-                }
-            }
+    private fun newName(): String {
+        val name = "user${usersCounter.incrementAndGet()}"
+        return if (bus == null) name else "$name@${bus.node}"
+    }
+
+    /**
+     * Appends a [message] to the history of a [room], which evicts the oldest message once it is full
+     * to prevent growing too much.
+     */
+    private fun record(room: Room, message: SharedFrame) {
+        room.history.append(message)
+    }
+
+    /**
+     * Sends an already encoded [frame] to all the members in a [room], either right away or with the next batch
+     * of the [coalescer], and then appends it to the room's history if it is a message ([history]).
+     * Messages sent to the lobby are appended to the persistent log first, so they are sent stamped with their offset.
+     */
+    private suspend fun deliver(room: Room, frame: SharedFrame, history: Boolean) {
+        val message = if (history && messageLog != null && room === rooms.lobby) {
+            frame.at(messageLog.append(frame.buffer()))
+        } else {
+            frame
+        }
+        if (coalescer != null) {
+            coalescer.submit(room, message, history)
+            return
+        }
+        broadcast(room, message)
+        if (history) record(room, message)
+    }
+
+    /**
+     * Enqueues an already encoded [frame] to all the members in a [room], including all the connections per member.
+     * It never waits for a socket: each socket drains its own queue, so a slow socket does not delay the others.
+     */
+    private suspend fun broadcast(room: Room, frame: SharedFrame) {
+        val start = System.nanoTime()
+        fanOut.broadcast(room.members, frame)
+        metrics.broadcastLatency.recordSince(start)
+    }
+
+    /**
+     * Sends a [message] coming from a [sender] to all the members in a [room], including all the connections per member,
+     * in this node and in the others.
+     */
+    private suspend fun broadcast(room: Room, sender: String, message: String) {
+        val name = members[sender]?.name ?: sender
+        val frame = SharedFrame.message(MessageType.NOTICE, name, room.name, message)
+        deliver(room, frame, history = false)
+        bus?.publish(ClusterEvent.Broadcast(bus.node, room.name, frame, history = false))
+    }
+
+    /**
+     * Captures the state that survives a restart: the users counter, the names of the members, including the ones
+     * restored but not joined again yet, unless they expired, and the history of each room.
+     * It only reads concurrent structures, so members and messages keep flowing meanwhile.
+     */
+    private fun snapshot(): ChatSnapshot {
+        val now = System.currentTimeMillis()
+        restoredNames.values.removeIf { expired(it, now) }
+        val names = HashMap(restoredNames)
+        members.forEach { names[it.id] = ChatSnapshot.Name(it.name, now) }
+        val histories = rooms.all.associate { room -> room.name to room.history.snapshot().map { it.buffer() } }
+        return ChatSnapshot(usersCounter.get(), names, histories)
+    }
+
+    private fun restore(snapshot: ChatSnapshot) {
+        usersCounter.set(snapshot.usersCounter)
+        val now = System.currentTimeMillis()
+        snapshot.names.forEach { (id, name) -> if (!expired(name, now)) restoredNames[id] = name }
+        for ((name, messages) in snapshot.histories) {
+            // The lobby history is warmed up from the log instead, which knows the offsets of its messages.
+            if (messageLog != null && name == RoomRegistry.LOBBY) continue
+            val history = rooms.restore(name).history
+            messages.takeLast(config.historyCapacity).forEach { history.append(SharedFrame.copyOf(it)) }
         }
     }
+
+    private fun expired(name: ChatSnapshot.Name, now: Long): Boolean =
+        now - name.lastSeenMillis > (config.snapshot?.nameTtlMillis ?: Long.MAX_VALUE)
+
+    /**
+     * Writes a last snapshot, stops the coalescer and flushes the message log, if enabled.
+     */
+    override fun close() {
+        snapshots?.close()
+        coalescer?.close()
+        messageLog?.close()
+    }
+
+    private companion object {
+        val HELP = SharedFrame.message(
+            MessageType.REPLY,
+            "server::help",
+            "",
+            "Possible commands are: /user, /join, /msg, /search, /help and /who [version], " +
+                "where version is the one of the last /who reply ([server::who@version])",
+        )
+    }
 }
@@ -0,0 +1,54 @@
+package application.server
+
+import application.server.admission.AdmissionConfig
+import application.server.coalescing.CoalescingConfig
+import application.server.ingress.IngressLimitConfig
+import application.server.log.MessageLogConfig
+import application.server.outbound.OverflowPolicy
+import application.server.search.SearchConfig
+import application.server.snapshot.SnapshotConfig
+
+/**
+ * Holds the tunable settings of a [ChatServer].
+ * @property outboundCapacity The maximum number of frames queued per socket before [overflowPolicy] is applied.
+ * @property overflowPolicy What to do with a socket whose outbound queue is full.
+ * @property fanOutShards The number of shards the members are partitioned in for broadcasting.
+ * @property fanOutParallelism The maximum number of threads pushing shards at the same time.
+ * @property parallelFanOutThreshold The number of members from which shards are pushed concurrently.
+ * @property historyCapacity The number of latest messages kept to be replayed to new members.
+ * @property replayBatchSize The maximum number of messages replayed together in a single frame, 1 to replay each
+ * message in its own frame.
+ * @property messageLog The settings of the persistent message log, or null to keep the history only in memory.
+ * @property ingress The rate limit of the frames received from each socket, or null to accept them all.
+ * @property coalescing The settings to send messages in batches, or null to send each message in its own frame.
+ * @property search The settings of the index of the latest messages, or null to disable searching them.
+ * @property snapshot The settings of the snapshots restored at startup, or null to start from scratch.
+ * @property admission The connection caps of the websocket upgrades, or null to admit them all.
+ */
+data class ChatServerConfig(
+    val outboundCapacity: Int = 256,
+    val overflowPolicy: OverflowPolicy = OverflowPolicy.DROP_OLDEST,
+    val fanOutShards: Int = Runtime.getRuntime().availableProcessors(),
+    val fanOutParallelism: Int = Runtime.getRuntime().availableProcessors(),
+    val parallelFanOutThreshold: Int = 1024,
+    val historyCapacity: Int = 100,
+    val replayBatchSize: Int = 1,
+    val messageLog: MessageLogConfig? = null,
+    val ingress: IngressLimitConfig? = null,
+    val coalescing: CoalescingConfig? = null,
+    val search: SearchConfig? = null,
+    val snapshot: SnapshotConfig? = null,
+    val admission: AdmissionConfig? = null,
+) {
+    init {
+        require(outboundCapacity > 0) { "outboundCapacity must be positive" }
+        require(fanOutShards > 0) { "fanOutShards must be positive" }
+        require(fanOutParallelism > 0) { "fanOutParallelism must be positive" }
+        require(historyCapacity > 0) { "historyCapacity must be positive" }
+        require(replayBatchSize > 0) { "replayBatchSize must be positive" }
+        require(historyCapacity <= outboundCapacity) { "historyCapacity must fit in the outbound queue" }
+        require(messageLog == null || messageLog.replayLimit <= outboundCapacity) {
+            "the replay limit of the message log must fit in the outbound queue"
+        }
+    }
+}
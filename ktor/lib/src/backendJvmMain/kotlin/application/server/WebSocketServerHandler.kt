@@ -1,14 +1,22 @@
 package application.server
 
 import application.models.ChatSession
+import application.plugins.AdmissionLeaseKey
+import application.server.ingress.IngressPolicy
 import io.ktor.server.sessions.*
 import io.ktor.server.websocket.*
 import io.ktor.websocket.*
-import kotlinx.coroutines.channels.consumeEach
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.withContext
+import protocol.ChatRecordReader
+import protocol.MessageType
 
 class WebSocketServerHandler(val server: ChatServer) {
 
-    suspend fun DefaultWebSocketServerSession.handleChatSession() {
+    /**
+     * Handles a chat socket, which speaks the text protocol, or the [binary] protocol if it was negotiated.
+     */
+    suspend fun DefaultWebSocketServerSession.handleChatSession(binary: Boolean = false) {
         // First of all, we get the session.
         val session = call.sessions.get<ChatSession>()
 
@@ -21,27 +29,61 @@ class WebSocketServerHandler(val server: ChatServer) {
 
         // We notify that a member joined by calling the server handler [memberJoin].
         // This allows associating the session ID to a specific WebSocket connection.
-        server.memberJoin(session.id, this)
+        // A reconnecting client can ask to resume the history from the log offset it already saw,
+        // and limit how many messages of the history it gets (e.g. none if it still shows them).
+        val offset = call.request.queryParameters["offset"]?.toLongOrNull()
+        val history = call.request.queryParameters["history"]?.toIntOrNull()?.coerceAtLeast(0)
+
+        // Each socket has its own rate limit, so a client flooding its socket does not take over the broadcasts.
+        val limiter = server.ingressLimiter()
 
         try {
+            // Joining is within the try, so a join that fails or is cancelled halfway is cleaned up too.
+            server.memberJoin(session.id, this, offset, binary, history)
+
             // We start receiving messages (frames).
             // Since this is a coroutine, it is suspended until receiving frames.
-            // Once the connection is closed, this consumeEach will finish and the code will continue.
-            incoming.consumeEach { frame ->
+            // Once the connection is closed, this loop will finish and the code will continue.
+            for (frame in incoming) {
                 // Frames can be [Text], [Binary], [Ping], [Pong], [Close].
-                // We are only interested in textual messages, so we filter it.
+                // We are only interested in textual messages, and binary ones for the binary protocol,
+                // so we filter it.
+                if (frame !is Frame.Text && !(binary && frame is Frame.Binary)) continue
+                server.metrics.received()
+
+                // Frames above the limit are either delayed by the limiter itself, dropped, or close the socket.
+                if (limiter != null && !limiter.admit()) {
+                    if (limiter.policy == IngressPolicy.DISCONNECT) {
+                        close(CloseReason(CloseReason.Codes.VIOLATED_POLICY, "Rate limit exceeded"))
+                        break
+                    }
+                    continue
+                }
+
+                // Now it is time to process the text sent from the user.
+                // At this point, we have context about this connection,
+                // the session, the text and the server.
+                // So we have everything we need.
                 if (frame is Frame.Text) {
-                    // Now it is time to process the text sent from the user.
-                    // At this point, we have context about this connection,
-                    // the session, the text and the server.
-                    // So we have everything we need.
                     receivedMessage(session.id, frame.readText())
+                    continue
+                }
+                try {
+                    receivedRecords(session.id, frame.data)
+                } catch (e: IllegalArgumentException) {
+                    close(CloseReason(CloseReason.Codes.PROTOCOL_ERROR, e.message ?: "Malformed record"))
+                    break
                 }
             }
         } finally {
             // Either if there was an error, or if the connection was closed gracefully,
-            // we notified the server that the member had left.
-            server.memberLeft(session.id, this)
+            // we notified the server that the member had left, even if the socket was cancelled,
+            // and free its place for other sockets whatever happens.
+            try {
+                withContext(NonCancellable) { server.memberLeft(session.id, this@handleChatSession) }
+            } finally {
+                call.attributes.getOrNull(AdmissionLeaseKey)?.release()
+            }
         }
     }
 
@@ -52,24 +94,20 @@ class WebSocketServerHandler(val server: ChatServer) {
         // We are going to handle commands (text starting with '/') and normal messages
         when {
             // The command `who` responds the user about all the member names connected to the user.
-            command.startsWith("/who") -> server.who(id)
+            // Given the version of the roster the user already has, it responds only what changed since then.
+            command.startsWith("/who") -> server.who(id, command.removePrefix("/who").trim().toLongOrNull())
             // The command `user` allows the user to set its name.
-            command.startsWith("/user") -> {
-                // We strip the command part to get the rest of the parameters.
-                // In this case the only parameter is the user's newName.
-                val newName = command.removePrefix("/user").trim()
-                // We verify that it is a valid name (in terms of length) to prevent abusing
-                when {
-                    newName.isEmpty() -> server.sendTo(id, "server::help", "/user [newName]")
-                    newName.length > 50 -> server.sendTo(
-                        id,
-                        "server::help",
-                        "new name is too long: 50 characters limit"
-                    )
-
-                    else -> server.memberRenamed(id, newName)
-                }
+            // We strip the command part to get the rest of the parameters.
+            // In this case the only parameter is the user's newName.
+            command.startsWith("/user") -> rename(id, command.removePrefix("/user").trim())
+            // The command `join` allows the user to move to another room, which is created if it does not exist.
+            command.startsWith("/join") -> join(id, command.removePrefix("/join").trim())
+            // The command `msg` allows the user to send a message only to another member, by its name.
+            command.startsWith("/msg") -> command.removePrefix("/msg").trim().let {
+                privateMessage(id, it.substringBefore(' '), it.substringAfter(' ', "").trim())
             }
+            // The command `search` allows the user to find the latest messages of its room holding some terms.
+            command.startsWith("/search") -> search(id, command.removePrefix("/search").trim())
             // The command 'help' allows users to get a list of available commands.
             command.startsWith("/help") -> server.help(id)
             // If no commands are matched at this point, we notify about it.
@@ -81,4 +119,74 @@ class WebSocketServerHandler(val server: ChatServer) {
             // Handle a normal message.
             else -> server.message(id, command)
         }
+
+    /**
+     * We received a binary frame, which holds one or more records. Its fields are read in place,
+     * so there is no need to parse the commands out of the text.
+     */
+    private suspend fun receivedRecords(id: String, data: ByteArray) {
+        val reader = ChatRecordReader(data)
+        while (reader.next()) {
+            when (reader.type) {
+                MessageType.MESSAGE -> server.message(id, reader.payload())
+                MessageType.WHO -> server.who(id, reader.payload().trim().toLongOrNull())
+                MessageType.RENAME -> rename(id, reader.payload().trim())
+                MessageType.JOIN -> join(id, reader.room().trim())
+                MessageType.PRIVATE -> privateMessage(id, reader.room().trim(), reader.payload())
+                MessageType.HELP -> server.help(id)
+                MessageType.SEARCH -> search(id, reader.payload().trim())
+                // Records only sent by the server, or of an unknown type.
+                else -> server.sendTo(id, "server::help", "Unknown record type")
+            }
+        }
+    }
+
+    /**
+     * Renames a member after verifying that it is a valid name (in terms of length) to prevent abusing.
+     */
+    private suspend fun rename(id: String, newName: String) =
+        when {
+            newName.isEmpty() -> server.sendTo(id, "server::help", "/user [newName]")
+            newName.length > 50 -> server.sendTo(
+                id,
+                "server::help",
+                "new name is too long: 50 characters limit"
+            )
+
+            else -> server.memberRenamed(id, newName)
+        }
+
+    /**
+     * Sends a private message after verifying that it has both a recipient and a text.
+     */
+    private suspend fun privateMessage(id: String, recipient: String, message: String) =
+        when {
+            recipient.isEmpty() || message.isEmpty() -> server.sendTo(id, "server::help", "/msg [name] [message]")
+            else -> server.privateMessage(id, recipient, message)
+        }
+
+    /**
+     * Searches the latest messages after verifying that the query is not empty nor too long.
+     */
+    private suspend fun search(id: String, query: String) =
+        when {
+            query.isEmpty() -> server.sendTo(id, "server::help", "/search [terms]")
+            query.length > 200 -> server.sendTo(id, "server::help", "query is too long: 200 characters limit")
+            else -> server.search(id, query)
+        }
+
+    /**
+     * Moves a member to a room after verifying that it is a valid room name.
+     */
+    private suspend fun join(id: String, room: String) =
+        when {
+            room.isEmpty() -> server.sendTo(id, "server::help", "/join [room]")
+            room.length > 50 -> server.sendTo(
+                id,
+                "server::help",
+                "room name is too long: 50 characters limit"
+            )
+
+            else -> server.memberMoved(id, room)
+        }
 }
@@ -0,0 +1,26 @@
+package application.server.admission
+
+/**
+ * Holds the settings of an [AdmissionController].
+ * @property maxConnections The maximum number of open sockets, across all the members.
+ * @property maxConnectionsPerSession The maximum number of open sockets of a single session (tabs of a browser).
+ * @property queueCapacity The maximum number of upgrades waiting for a socket to close once [maxConnections] is reached,
+ * the upgrades above it are rejected right away.
+ * @property queueTimeoutMillis How long an upgrade waits for a socket to close before being rejected.
+ * @property retryAfterSeconds The delay rejected clients are told to wait before trying again.
+ */
+data class AdmissionConfig(
+    val maxConnections: Int = 10_000,
+    val maxConnectionsPerSession: Int = 8,
+    val queueCapacity: Int = 256,
+    val queueTimeoutMillis: Long = 1000,
+    val retryAfterSeconds: Int = 5,
+) {
+    init {
+        require(maxConnections > 0) { "maxConnections must be positive" }
+        require(maxConnectionsPerSession > 0) { "maxConnectionsPerSession must be positive" }
+        require(queueCapacity >= 0) { "queueCapacity must not be negative" }
+        require(queueTimeoutMillis >= 0) { "queueTimeoutMillis must not be negative" }
+        require(retryAfterSeconds >= 0) { "retryAfterSeconds must not be negative" }
+    }
+}
@@ -0,0 +1,88 @@
+package application.server.admission
+
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Decides which websocket upgrades are admitted, so a reconnect storm can not open more sockets than the server
+ * can serve.
+ *
+ * Each session can have up to [AdmissionConfig.maxConnectionsPerSession] sockets, and the server up to
+ * [AdmissionConfig.maxConnections]. Once the server is full, a bounded number of upgrades wait a bit for a socket to
+ * close, and the rest are rejected right away, so they cost nothing and the clients can retry later.
+ */
+class AdmissionController(
+    private val config: AdmissionConfig,
+    private val metrics: AdmissionMetrics,
+) {
+
+    private val permits = Semaphore(config.maxConnections)
+    private val sessions = ConcurrentHashMap<String, Int>()
+
+    /**
+     * The delay rejected clients are told to wait before trying again.
+     */
+    val retryAfterSeconds: Int
+        get() = config.retryAfterSeconds
+
+    /**
+     * A socket admitted, which must be [released][release] once closed.
+     */
+    inner class Lease internal constructor(private val session: String) {
+
+        private val released = AtomicBoolean()
+
+        /**
+         * Frees the place of the socket, only the first time it is called.
+         */
+        fun release() {
+            if (!released.compareAndSet(false, true)) return
+            permits.release()
+            leave(session)
+        }
+    }
+
+    /**
+     * Admits a socket of a [session], waiting for a place if the server is full and the queue is not.
+     * @return the lease of the socket, or null if it is rejected.
+     */
+    suspend fun admit(session: String): Lease? {
+        if (!join(session)) {
+            metrics.rejected()
+            return null
+        }
+        if (!permits.tryAcquire() && !await()) {
+            leave(session)
+            metrics.rejected()
+            return null
+        }
+        metrics.accepted()
+        return Lease(session)
+    }
+
+    private suspend fun await(): Boolean {
+        if (!metrics.enqueue(config.queueCapacity)) return false
+        try {
+            return withTimeoutOrNull(config.queueTimeoutMillis) { permits.acquire() } != null
+        } finally {
+            metrics.dequeue()
+        }
+    }
+
+    private fun join(session: String): Boolean {
+        var joined = false
+        sessions.compute(session) { _, count ->
+            val current = count ?: 0
+            if (current >= config.maxConnectionsPerSession) return@compute current
+            joined = true
+            current + 1
+        }
+        return joined
+    }
+
+    private fun leave(session: String) {
+        sessions.computeIfPresent(session) { _, count -> if (count <= 1) null else count - 1 }
+    }
+}
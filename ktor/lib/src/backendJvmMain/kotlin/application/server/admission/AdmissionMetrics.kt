@@ -0,0 +1,60 @@
+package application.server.admission
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Counters of the websocket upgrades handled by an [AdmissionController].
+ */
+class AdmissionMetrics {
+
+    private val accepted = LongAdder()
+    private val queued = LongAdder()
+    private val rejected = LongAdder()
+    private val pending = AtomicInteger()
+
+    /**
+     * The number of upgrades admitted, whether they waited or not.
+     */
+    val acceptedUpgrades: Long
+        get() = accepted.sum()
+
+    /**
+     * The number of upgrades that had to wait for a socket to close.
+     */
+    val queuedUpgrades: Long
+        get() = queued.sum()
+
+    /**
+     * The number of upgrades rejected by a connection cap, a full queue or a timeout.
+     */
+    val rejectedUpgrades: Long
+        get() = rejected.sum()
+
+    /**
+     * The number of upgrades currently waiting.
+     */
+    val pendingUpgrades: Long
+        get() = pending.get().toLong()
+
+    internal fun accepted() = accepted.increment()
+
+    internal fun rejected() = rejected.increment()
+
+    /**
+     * Counts an upgrade starting to wait, unless the queue already holds [capacity] of them.
+     * @return whether the upgrade can wait.
+     */
+    internal fun enqueue(capacity: Int): Boolean {
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet()
+            return false
+        }
+        queued.increment()
+        return true
+    }
+
+    internal fun dequeue() {
+        pending.decrementAndGet()
+    }
+}
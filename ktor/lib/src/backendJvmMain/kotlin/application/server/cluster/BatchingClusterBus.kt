@@ -0,0 +1,108 @@
+package application.server.cluster
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.selects.onTimeout
+import kotlinx.coroutines.selects.select
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * A [ClusterBus] that groups the published events in batches before transmitting them, to amortize the cost of
+ * each transmission. A batch is transmitted once it has [maxBatchSize] events, or [batchWindowMillis] after its
+ * first event was published. With a zero window, a batch holds the events published while the previous batch was
+ * being transmitted.
+ */
+abstract class BatchingClusterBus(
+    override val node: String,
+    private val batchWindowMillis: Long,
+    private val maxBatchSize: Int,
+) : ClusterBus {
+
+    init {
+        require(batchWindowMillis >= 0) { "batchWindowMillis must not be negative" }
+        require(maxBatchSize > 0) { "maxBatchSize must be positive" }
+    }
+
+    protected val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
+    private val outbox = Channel<ClusterEvent>(Channel.UNLIMITED)
+    private val handlers = CopyOnWriteArrayList<suspend (ClusterEvent) -> Unit>()
+
+    /**
+     * Transmits a [batch] of events published by this node to the other nodes.
+     */
+    protected abstract suspend fun transmit(batch: List<ClusterEvent>)
+
+    override fun publish(event: ClusterEvent) {
+        outbox.trySend(event)
+    }
+
+    override fun subscribe(handler: suspend (ClusterEvent) -> Unit) {
+        handlers += handler
+    }
+
+    /**
+     * Hands a [batch] received from another node to the subscribed handlers.
+     */
+    internal suspend fun deliver(batch: List<ClusterEvent>) {
+        for (event in batch) {
+            if (event.node == node) continue
+            handlers.forEach { it(event) }
+        }
+    }
+
+    /**
+     * Hands an [event] about another node, e.g. [ClusterEvent.NodeLeft], to the subscribed handlers without waiting
+     * for them, for callers that can not suspend.
+     */
+    internal fun signal(event: ClusterEvent) {
+        scope.launch { deliver(listOf(event)) }
+    }
+
+    /**
+     * Starts transmitting the published events. Must be called by subclasses once they are ready to transmit.
+     */
+    protected fun start() {
+        scope.launch {
+            val batch = ArrayList<ClusterEvent>(maxBatchSize)
+            while (true) {
+                batch += outbox.receiveCatching().getOrNull() ?: break
+                collect(batch)
+                transmit(ArrayList(batch))
+                batch.clear()
+            }
+        }
+    }
+
+    /**
+     * Adds to the [batch] the events published within the batch window, up to the maximum size.
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private suspend fun collect(batch: MutableList<ClusterEvent>) {
+        val deadline = System.nanoTime() + batchWindowMillis * 1_000_000
+        while (batch.size < maxBatchSize) {
+            val available = outbox.tryReceive().getOrNull()
+            if (available != null) {
+                batch += available
+                continue
+            }
+            val remainingMillis = (deadline - System.nanoTime()) / 1_000_000
+            if (remainingMillis <= 0) return
+            val next = select<ClusterEvent?> {
+                outbox.onReceiveCatching { it.getOrNull() }
+                onTimeout(remainingMillis) { null }
+            } ?: return
+            batch += next
+        }
+    }
+
+    override fun close() {
+        outbox.close()
+        scope.cancel()
+    }
+}
@@ -0,0 +1,26 @@
+package application.server.cluster
+
+import java.io.Closeable
+
+/**
+ * Connects the nodes of a chat cluster, so the events of the members of one node reach all the others.
+ * Each node fans out the events it receives to its own members.
+ */
+interface ClusterBus : Closeable {
+
+    /**
+     * The ID of this node, which must be unique in the cluster.
+     */
+    val node: String
+
+    /**
+     * Publishes an [event] to the other nodes, without waiting for it to be sent.
+     */
+    fun publish(event: ClusterEvent)
+
+    /**
+     * Registers the [handler] of the events published by the other nodes.
+     * Events published by the same node are handled in the order they were published.
+     */
+    fun subscribe(handler: suspend (ClusterEvent) -> Unit)
+}
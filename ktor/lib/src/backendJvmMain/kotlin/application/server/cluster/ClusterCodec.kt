@@ -0,0 +1,107 @@
+package application.server.cluster
+
+import application.server.outbound.SharedFrame
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+/**
+ * Serializes batches of [ClusterEvent]s, to be sent to other nodes over the network.
+ *
+ * A batch is laid out as `[count: Int]` followed by each event as `[type: Byte][node: UTF]` and its own fields,
+ * where frames are written as `[size: Int][payload: size bytes][size: Int][records: size bytes]`, with both the text
+ * payload and the binary records, so the binary clients of other nodes get the type, sender and room of each message
+ * too. Rosters are written as `[count: Int]` followed by each member as `[member: UTF][name: UTF]`.
+ */
+internal object ClusterCodec {
+
+    private const val BROADCAST: Byte = 1
+    private const val MEMBER_JOINED: Byte = 2
+    private const val MEMBER_RENAMED: Byte = 3
+    private const val MEMBER_LEFT: Byte = 4
+    private const val ROSTER: Byte = 5
+
+    fun encode(batch: List<ClusterEvent>): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { output ->
+            output.writeInt(batch.size)
+            batch.forEach { output.write(it) }
+        }
+        return bytes.toByteArray()
+    }
+
+    fun decode(bytes: ByteArray): List<ClusterEvent> =
+        DataInputStream(ByteArrayInputStream(bytes)).use { input ->
+            List(input.readInt()) { input.readEvent() }
+        }
+
+    private fun DataOutputStream.write(event: ClusterEvent) {
+        when (event) {
+            is ClusterEvent.Broadcast -> {
+                writeByte(BROADCAST.toInt())
+                writeUTF(event.node)
+                writeUTF(event.room)
+                writeBoolean(event.history)
+                val payload = event.frame.buffer()
+                writeInt(payload.remaining())
+                write(ByteArray(payload.remaining()).also { payload.get(it) })
+                val records = event.frame.records()
+                writeInt(records.size)
+                write(records)
+            }
+
+            is ClusterEvent.MemberJoined -> {
+                writeByte(MEMBER_JOINED.toInt())
+                writeUTF(event.node)
+                writeUTF(event.member)
+                writeUTF(event.name)
+            }
+
+            is ClusterEvent.MemberRenamed -> {
+                writeByte(MEMBER_RENAMED.toInt())
+                writeUTF(event.node)
+                writeUTF(event.member)
+                writeUTF(event.name)
+            }
+
+            is ClusterEvent.MemberLeft -> {
+                writeByte(MEMBER_LEFT.toInt())
+                writeUTF(event.node)
+                writeUTF(event.member)
+            }
+
+            is ClusterEvent.Roster -> {
+                writeByte(ROSTER.toInt())
+                writeUTF(event.node)
+                writeInt(event.members.size)
+                event.members.forEach { (member, name) ->
+                    writeUTF(member)
+                    writeUTF(name)
+                }
+            }
+
+            is ClusterEvent.NodeJoined, is ClusterEvent.NodeLeft ->
+                throw IllegalArgumentException("${event::class.simpleName} events are never published")
+        }
+    }
+
+    private fun DataInputStream.readEvent(): ClusterEvent =
+        when (val type = readByte()) {
+            BROADCAST -> ClusterEvent.Broadcast(
+                node = readUTF(),
+                room = readUTF(),
+                history = readBoolean(),
+                frame = ByteArray(readInt()).also { readFully(it) }.let { payload ->
+                    val records = ByteArray(readInt()).also { readFully(it) }
+                    SharedFrame.encoded(payload) { records }
+                }
+            )
+
+            MEMBER_JOINED -> ClusterEvent.MemberJoined(readUTF(), readUTF(), readUTF())
+            MEMBER_RENAMED -> ClusterEvent.MemberRenamed(readUTF(), readUTF(), readUTF())
+            MEMBER_LEFT -> ClusterEvent.MemberLeft(readUTF(), readUTF())
+            ROSTER -> ClusterEvent.Roster(readUTF(), List(readInt()) { readUTF() to readUTF() }.toMap())
+            else -> throw IllegalArgumentException("unknown cluster event type $type")
+        }
+}
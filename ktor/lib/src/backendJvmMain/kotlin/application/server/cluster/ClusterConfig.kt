@@ -0,0 +1,21 @@
+package application.server.cluster
+
+import java.net.InetSocketAddress
+
+/**
+ * Holds the settings of a [TcpClusterBus].
+ * @property node The ID of this node, which must be unique in the cluster.
+ * @property host The address this node listens on for events of other nodes.
+ * @property port The port this node listens on for events of other nodes.
+ * @property peers The addresses the other nodes listen on.
+ * @property batchWindowMillis How long the first event of a batch waits for more events.
+ * @property maxBatchSize The maximum number of events sent together.
+ */
+data class ClusterConfig(
+    val node: String,
+    val host: String = "127.0.0.1",
+    val port: Int,
+    val peers: List<InetSocketAddress>,
+    val batchWindowMillis: Long = 1,
+    val maxBatchSize: Int = 64,
+)
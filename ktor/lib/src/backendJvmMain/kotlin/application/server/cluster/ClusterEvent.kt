@@ -0,0 +1,55 @@
+package application.server.cluster
+
+import application.server.outbound.SharedFrame
+
+/**
+ * An event published by a node of the cluster to the others, which apply it to their own members.
+ * @property node The ID of the node that published the event.
+ */
+sealed class ClusterEvent {
+    abstract val node: String
+
+    /**
+     * A [frame] to be sent to the local members of a [room].
+     * @property history Whether the frame is a message to be kept in the room's history, or just a notice.
+     */
+    data class Broadcast(
+        override val node: String,
+        val room: String,
+        val frame: SharedFrame,
+        val history: Boolean,
+    ) : ClusterEvent()
+
+    /**
+     * A [member] of the publishing node, known by [name], joined.
+     */
+    data class MemberJoined(override val node: String, val member: String, val name: String) : ClusterEvent()
+
+    /**
+     * A [member] of the publishing node renamed to [name].
+     */
+    data class MemberRenamed(override val node: String, val member: String, val name: String) : ClusterEvent()
+
+    /**
+     * A [member] of the publishing node left.
+     */
+    data class MemberLeft(override val node: String, val member: String) : ClusterEvent()
+
+    /**
+     * The names of all the [members] of the publishing node, by their ID, which replace the ones known so far.
+     * Nodes publish it when they start and whenever another node connects, so nodes starting late learn about
+     * the members that joined before.
+     */
+    data class Roster(override val node: String, val members: Map<String, String>) : ClusterEvent()
+
+    /**
+     * The bus connected to another [node]. It is never published, but handed by the bus to its own handlers.
+     */
+    data class NodeJoined(override val node: String) : ClusterEvent()
+
+    /**
+     * The bus lost its connection to another [node], e.g. because it crashed, so its members are gone too.
+     * It is never published, but handed by the bus to its own handlers.
+     */
+    data class NodeLeft(override val node: String) : ClusterEvent()
+}
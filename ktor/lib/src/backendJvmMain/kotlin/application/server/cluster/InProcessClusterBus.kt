@@ -0,0 +1,51 @@
+package application.server.cluster
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Connects [InProcessClusterBus]es living in the same process, e.g. several servers started by a test.
+ */
+class InProcessClusterHub {
+    internal val buses = CopyOnWriteArrayList<InProcessClusterBus>()
+}
+
+/**
+ * A [ClusterBus] that delivers batches directly to the other buses of the same [hub].
+ * The first batch to each bus connects to it, and closing a bus disconnects it from the others, as the connections
+ * of a [TcpClusterBus] do.
+ */
+class InProcessClusterBus(
+    node: String,
+    private val hub: InProcessClusterHub,
+    batchWindowMillis: Long = 0,
+    maxBatchSize: Int = 64,
+) : BatchingClusterBus(node, batchWindowMillis, maxBatchSize) {
+
+    /**
+     * The nodes this bus already transmitted to.
+     */
+    private val reached = ConcurrentHashMap.newKeySet<String>()
+
+    init {
+        hub.buses += this
+        start()
+    }
+
+    override suspend fun transmit(batch: List<ClusterEvent>) {
+        for (bus in hub.buses) {
+            if (bus === this) continue
+            if (reached.add(bus.node)) bus.deliver(listOf(ClusterEvent.NodeJoined(node)))
+            bus.deliver(batch)
+        }
+    }
+
+    override fun close() {
+        hub.buses -= this
+        for (bus in hub.buses) {
+            bus.reached -= node
+            bus.signal(ClusterEvent.NodeLeft(node))
+        }
+        super.close()
+    }
+}
@@ -0,0 +1,145 @@
+package application.server.cluster
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import org.slf4j.LoggerFactory
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A [ClusterBus] that sends batches to the other nodes over TCP, which allows running a cluster in a single machine
+ * through the loopback interface.
+ *
+ * Every node listens for the batches of the others and keeps one connection to each of its peers to send its own.
+ * Each batch is sent as `[size: Int][batch: size bytes]`, encoded by [ClusterCodec].
+ * A batch that can not be sent to a peer is dropped for that peer, and the connection is retried on the next batch.
+ *
+ * The handlers get a [ClusterEvent.NodeJoined] when a node opens its first connection to this one, and
+ * a [ClusterEvent.NodeLeft] once its last connection is closed, e.g. because the node crashed.
+ */
+class TcpClusterBus(private val config: ClusterConfig) :
+    BatchingClusterBus(config.node, config.batchWindowMillis, config.maxBatchSize) {
+
+    private val logger = LoggerFactory.getLogger(TcpClusterBus::class.java)
+
+    private val server = ServerSocket().apply { bind(InetSocketAddress(config.host, config.port)) }
+
+    private val connections = AtomicReferenceArray<DataOutputStream?>(config.peers.size)
+    private val accepted = CopyOnWriteArrayList<Socket>()
+
+    /**
+     * The number of open connections from each node.
+     */
+    private val inbound = ConcurrentHashMap<String, Int>()
+
+    init {
+        scope.launch(Dispatchers.IO) {
+            while (isActive) {
+                val socket = try {
+                    server.accept()
+                } catch (e: IOException) {
+                    break
+                }
+                launch { receive(socket) }
+            }
+        }
+        start()
+    }
+
+    private suspend fun receive(socket: Socket) {
+        accepted += socket
+        // The node on the other side, known once its first batch arrives.
+        var peer: String? = null
+        socket.use {
+            val input = DataInputStream(BufferedInputStream(socket.getInputStream()))
+            try {
+                while (true) {
+                    val bytes = ByteArray(input.readInt()).also { input.readFully(it) }
+                    val batch = ClusterCodec.decode(bytes)
+                    if (peer == null) {
+                        val node = batch.first().node
+                        peer = node
+                        if (inbound.merge(node, 1, Int::plus) == 1) deliver(listOf(ClusterEvent.NodeJoined(node)))
+                    }
+                    deliver(batch)
+                }
+            } catch (e: IOException) {
+                // the peer closed the connection, it will open a new one when it is back
+            }
+        }
+        accepted -= socket
+        val node = peer ?: return
+        if (inbound.computeIfPresent(node) { _, count -> if (count <= 1) null else count - 1 } == null) {
+            deliver(listOf(ClusterEvent.NodeLeft(node)))
+        }
+    }
+
+    override suspend fun transmit(batch: List<ClusterEvent>) {
+        val bytes = ClusterCodec.encode(batch)
+        withContext(Dispatchers.IO) {
+            config.peers.forEachIndexed { index, peer ->
+                val output = connections[index]
+                try {
+                    (output ?: connect(index, peer)).run {
+                        writeInt(bytes.size)
+                        write(bytes)
+                        flush()
+                    }
+                } catch (e: IOException) {
+                    logger.warn("Dropped a batch of {} events to {}: {}", batch.size, peer, e.message)
+                    connections.getAndSet(index, null)?.closeQuietly()
+                }
+            }
+        }
+    }
+
+    private fun connect(index: Int, peer: InetSocketAddress): DataOutputStream {
+        val socket = Socket()
+        socket.tcpNoDelay = true
+        socket.connect(peer, CONNECT_TIMEOUT_MILLIS)
+        val output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+        connections.set(index, output)
+        // Peers never write to this connection, so reading from it only returns once the peer closed it, e.g. when
+        // it restarts. The connection is discarded right away, instead of losing the next batch written to it.
+        scope.launch(Dispatchers.IO) {
+            try {
+                socket.getInputStream().read()
+            } catch (e: IOException) {
+                // the connection was closed by this side
+            }
+            if (connections.compareAndSet(index, output, null)) output.closeQuietly()
+        }
+        return output
+    }
+
+    override fun close() {
+        super.close()
+        server.close()
+        for (index in 0 until connections.length()) connections[index]?.closeQuietly()
+        accepted.forEach { it.closeQuietly() }
+    }
+
+    private fun Closeable.closeQuietly() {
+        try {
+            close()
+        } catch (ignore: IOException) {
+            // the connection is being discarded anyway
+        }
+    }
+
+    private companion object {
+        const val CONNECT_TIMEOUT_MILLIS = 1000
+    }
+}
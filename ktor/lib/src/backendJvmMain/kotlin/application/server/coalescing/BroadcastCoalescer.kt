@@ -0,0 +1,92 @@
+package application.server.coalescing
+
+import application.server.outbound.SharedFrame
+import application.server.rooms.Room
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.selects.onTimeout
+import kotlinx.coroutines.selects.select
+import java.io.Closeable
+
+/**
+ * Groups the messages broadcast to the rooms in batches, so each socket gets a single frame per batch
+ * instead of one frame per message, which amortizes the per-frame overhead under bursty traffic.
+ *
+ * A batch is flushed once it has [CoalescingConfig.maxBatchSize] messages, or [CoalescingConfig.windowMillis] after
+ * its first message was submitted. Messages are flushed by a single coroutine, so their order is kept.
+ * @property deliver Fans out a frame, either a single message or a [MessageBatch], to the members of a room.
+ * @property flushed Handles each message once it was delivered, along with whether it must be kept in the history.
+ */
+class BroadcastCoalescer(
+    private val config: CoalescingConfig,
+    private val deliver: suspend (Room, SharedFrame) -> Unit,
+    private val flushed: (Room, SharedFrame, Boolean) -> Unit,
+) : Closeable {
+
+    private class Pending(val room: Room, val frame: SharedFrame, val history: Boolean)
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val inbox = Channel<Pending>(Channel.UNLIMITED)
+
+    init {
+        scope.launch {
+            val batch = ArrayList<Pending>(config.maxBatchSize)
+            while (true) {
+                batch += inbox.receiveCatching().getOrNull() ?: break
+                collect(batch)
+                flush(batch)
+                batch.clear()
+            }
+        }
+    }
+
+    /**
+     * Queues a [frame] to be broadcast to a [room] with the next batch.
+     */
+    fun submit(room: Room, frame: SharedFrame, history: Boolean) {
+        inbox.trySend(Pending(room, frame, history))
+    }
+
+    /**
+     * Adds to the [batch] the messages submitted within the window, up to the maximum size.
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private suspend fun collect(batch: MutableList<Pending>) {
+        val deadline = System.nanoTime() + config.windowMillis * 1_000_000
+        while (batch.size < config.maxBatchSize) {
+            val available = inbox.tryReceive().getOrNull()
+            if (available != null) {
+                batch += available
+                continue
+            }
+            val remainingMillis = (deadline - System.nanoTime()) / 1_000_000
+            if (remainingMillis <= 0) return
+            val next = select<Pending?> {
+                inbox.onReceiveCatching { it.getOrNull() }
+                onTimeout(remainingMillis) { null }
+            } ?: return
+            batch += next
+        }
+    }
+
+    /**
+     * Delivers the messages of a [batch] with one frame per room, in the order the rooms got their first message.
+     */
+    private suspend fun flush(batch: List<Pending>) {
+        for ((room, pending) in batch.groupBy { it.room }) {
+            val frame = pending.singleOrNull()?.frame ?: MessageBatch.encode(pending.map { it.frame })
+            deliver(room, frame)
+            pending.forEach { flushed(room, it.frame, it.history) }
+        }
+    }
+
+    override fun close() {
+        inbox.close()
+        scope.cancel()
+    }
+}
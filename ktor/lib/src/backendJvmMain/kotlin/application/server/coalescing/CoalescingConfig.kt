@@ -0,0 +1,16 @@
+package application.server.coalescing
+
+/**
+ * Holds the settings of a [BroadcastCoalescer].
+ * @property windowMillis How long the first message of a batch waits for more messages before being sent.
+ * @property maxBatchSize The maximum number of messages sent together in a single frame.
+ */
+data class CoalescingConfig(
+    val windowMillis: Long = 5,
+    val maxBatchSize: Int = 32,
+) {
+    init {
+        require(windowMillis >= 0) { "windowMillis must not be negative" }
+        require(maxBatchSize > 0) { "maxBatchSize must be positive" }
+    }
+}
@@ -0,0 +1,52 @@
+package application.server.coalescing
+
+import application.server.outbound.SharedFrame
+import java.nio.ByteBuffer
+
+/**
+ * The format of a text frame holding several messages: a record separator character (`0x1E`), followed by each
+ * message as its length in bytes, a colon and its UTF-8 bytes, e.g. `\u001E5:hello6:world!`.
+ *
+ * Since every other message sent by the server starts with `[` (or with `#` when stamped with its log offset),
+ * clients can tell a batch by its first byte.
+ * For the binary protocol, a batch is simply the records of its messages back to back.
+ */
+object MessageBatch {
+
+    const val MARKER: Byte = 0x1E
+    private const val SEPARATOR = ':'.code.toByte()
+
+    /**
+     * Encodes several already encoded [messages] in a single batch frame.
+     */
+    fun encode(messages: List<SharedFrame>): SharedFrame {
+        val headers = Array(messages.size) { messages[it].size.toString().encodeToByteArray() }
+        var size = 1
+        for (i in messages.indices) size += headers[i].size + 1 + messages[i].size
+
+        val bytes = ByteArray(size)
+        val buffer = ByteBuffer.wrap(bytes).put(MARKER)
+        for (i in messages.indices) {
+            buffer.put(headers[i]).put(SEPARATOR).put(messages[i].buffer())
+        }
+        return SharedFrame.encoded(bytes) { records(messages) }
+    }
+
+    /**
+     * Splits [messages] in frames of up to [size] messages each, in order.
+     * A message alone in its frame is kept as is, so a [size] of 1 sends each message in its own frame.
+     */
+    fun chunked(messages: List<SharedFrame>, size: Int): List<SharedFrame> =
+        messages.chunked(size) { if (it.size == 1) it[0] else encode(it) }
+
+    private fun records(messages: List<SharedFrame>): ByteArray {
+        val records = messages.map { it.records() }
+        val bytes = ByteArray(records.sumOf { it.size })
+        var position = 0
+        for (record in records) {
+            record.copyInto(bytes, position)
+            position += record.size
+        }
+        return bytes
+    }
+}
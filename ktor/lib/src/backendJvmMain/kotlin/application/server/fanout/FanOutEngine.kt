@@ -0,0 +1,50 @@
+package application.server.fanout
+
+import application.server.members.Member
+import application.server.outbound.SharedFrame
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+
+/**
+ * Pushes a frame to every socket of a [ShardedMembers].
+ *
+ * Small servers are walked on the caller's coroutine, since starting coroutines would cost more than the fan-out
+ * itself. From [parallelThreshold] members on, each shard is pushed by its own coroutine on a dispatcher
+ * bounded to [parallelism] threads, so the fan-out latency stops growing linearly with the number of members
+ * while never taking more than its share of the CPU.
+ */
+class FanOutEngine(
+    private val parallelThreshold: Int,
+    parallelism: Int,
+) {
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val dispatcher: CoroutineDispatcher = Dispatchers.Default.limitedParallelism(parallelism)
+
+    /**
+     * Enqueues [frame] to all the sockets of all the [members], which share its payload.
+     * Returns once every socket has the frame in its outbound queue, which keeps the frames of a sender in order.
+     */
+    suspend fun broadcast(members: ShardedMembers, frame: SharedFrame) {
+        if (members.shardCount == 1 || members.size < parallelThreshold) {
+            for (index in 0 until members.shardCount) {
+                push(members.shard(index), frame)
+            }
+            return
+        }
+        coroutineScope {
+            for (index in 0 until members.shardCount) {
+                launch(dispatcher) { push(members.shard(index), frame) }
+            }
+        }
+    }
+
+    private fun push(shard: Collection<Member>, frame: SharedFrame) {
+        for (member in shard) {
+            member.send(frame)
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package application.server.fanout
+
+import application.server.members.Member
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Indexes [Member]s by session ID, partitioned in a fixed number of shards.
+ * Each shard can be walked independently, which allows a [FanOutEngine] to push a message to all of them concurrently.
+ */
+class ShardedMembers(shardCount: Int) {
+
+    init {
+        require(shardCount > 0) { "shardCount must be positive" }
+    }
+
+    private val shards = Array(shardCount) { ConcurrentHashMap<String, Member>() }
+
+    /**
+     * The number of shards the members are partitioned in.
+     */
+    val shardCount: Int
+        get() = shards.size
+
+    /**
+     * The number of members across all the shards.
+     */
+    val size: Int
+        get() = shards.sumOf { it.size }
+
+    /**
+     * Gets the [Member] identified by a session ID, or null if it is not indexed.
+     */
+    operator fun get(member: String): Member? =
+        shardOf(member)[member]
+
+    /**
+     * Whether there are no members in any shard.
+     */
+    fun isEmpty(): Boolean =
+        shards.all { it.isEmpty() }
+
+    /**
+     * Indexes a [member], which is shared with the [application.server.members.MemberRegistry] of the server.
+     */
+    fun put(member: Member) {
+        shardOf(member.id)[member.id] = member
+    }
+
+    /**
+     * Unindexes a [member], unless another member with the same session ID replaced it meanwhile.
+     */
+    fun remove(member: Member) {
+        shardOf(member.id).remove(member.id, member)
+    }
+
+    /**
+     * Gets every member in the shard at [index].
+     */
+    fun shard(index: Int): Collection<Member> =
+        shards[index].values
+
+    private fun shardOf(member: String) =
+        shards[Math.floorMod(member.hashCode(), shards.size)]
+}
@@ -0,0 +1,88 @@
+package application.server.history
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A fixed-capacity ring of the latest values appended to it, which never locks.
+ *
+ * Each appended value gets a sequence number from a single counter and is published in the slot of that sequence.
+ * Readers take a [snapshot], which is just the range of sequences published so far: values are read from the slots
+ * while iterating, without copying the ring, and a slot that was meanwhile overwritten by a newer lap is skipped.
+ */
+class HistoryRing<T : Any>(val capacity: Int) {
+
+    init {
+        require(capacity > 0) { "capacity must be positive" }
+    }
+
+    private class Slot<T>(val sequence: Long, val value: T)
+
+    private val slots = AtomicReferenceArray<Slot<T>?>(capacity)
+
+    /**
+     * The sequence the next appended value will get.
+     */
+    private val next = AtomicLong()
+
+    /**
+     * The sequence of the latest appended value, or -1 if the ring is empty.
+     */
+    val lastSequence: Long
+        get() = next.get() - 1
+
+    /**
+     * Appends a [value], evicting the oldest one if the ring is full.
+     * A single atomic increment claims the slot, so appends never wait for each other, except for the unlikely case
+     * of a writer that was stalled for a whole lap of the ring, which must not overwrite a newer value.
+     * @return the sequence of the appended value.
+     */
+    fun append(value: T): Long {
+        val sequence = next.getAndIncrement()
+        val index = (sequence % capacity).toInt()
+        val slot = Slot(sequence, value)
+        while (true) {
+            val current = slots.get(index)
+            if (current != null && current.sequence > sequence) return sequence
+            if (slots.compareAndSet(index, current, slot)) return sequence
+        }
+    }
+
+    /**
+     * Takes a snapshot of the values in the ring with a sequence greater or equal to [from].
+     * The snapshot holds no values, they are read from the ring when iterating.
+     */
+    fun snapshot(from: Long = 0): Snapshot {
+        val end = next.get()
+        return Snapshot(maxOf(from, end - capacity, 0), end)
+    }
+
+    /**
+     * The values of the ring in the sequence range [[start], [end]), in order.
+     * Values evicted from the ring after the snapshot was taken are skipped, as well as values whose sequence was
+     * claimed but are not published yet.
+     */
+    inner class Snapshot internal constructor(val start: Long, val end: Long) : Iterable<T> {
+        override fun iterator(): Iterator<T> = object : Iterator<T> {
+            private var sequence = start
+            private var nextValue: T? = advance()
+
+            private fun advance(): T? {
+                while (sequence < end) {
+                    val slot = slots.get((sequence % capacity).toInt())
+                    val expected = sequence++
+                    if (slot != null && slot.sequence == expected) return slot.value
+                }
+                return null
+            }
+
+            override fun hasNext() = nextValue != null
+
+            override fun next(): T {
+                val value = nextValue ?: throw NoSuchElementException()
+                nextValue = advance()
+                return value
+            }
+        }
+    }
+}
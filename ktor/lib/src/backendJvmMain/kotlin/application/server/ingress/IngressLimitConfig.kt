@@ -0,0 +1,18 @@
+package application.server.ingress
+
+/**
+ * Holds the settings of the rate limit applied to the frames received from each socket.
+ * @property ratePerSecond The sustained number of frames per second a socket can send.
+ * @property burst The number of frames a socket can send at once on top of the sustained rate.
+ * @property policy What to do with the frames above the limit.
+ */
+data class IngressLimitConfig(
+    val ratePerSecond: Double = 20.0,
+    val burst: Int = 40,
+    val policy: IngressPolicy = IngressPolicy.DELAY,
+) {
+    init {
+        require(ratePerSecond > 0) { "ratePerSecond must be positive" }
+        require(burst > 0) { "burst must be positive" }
+    }
+}
@@ -0,0 +1,77 @@
+package application.server.ingress
+
+import kotlinx.coroutines.delay
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A token bucket limiting the frames received from a socket, implemented as a generic cell rate algorithm (GCRA):
+ * instead of counting tokens, it keeps the theoretical arrival time of the next frame in a single [AtomicLong].
+ * Each frame moves that time forward by one emission interval, and a frame is above the limit when it would be
+ * further ahead than the [burst][IngressLimitConfig.burst] allows.
+ * It is lock-free and does not allocate per frame.
+ */
+class IngressLimiter(
+    private val config: IngressLimitConfig,
+    private val metrics: IngressMetrics,
+    private val clock: () -> Long = System::nanoTime,
+) {
+
+    val policy: IngressPolicy
+        get() = config.policy
+
+    private val interval = (TimeUnit.SECONDS.toNanos(1) / config.ratePerSecond).toLong().coerceAtLeast(1)
+    private val tolerance = interval * config.burst
+
+    /**
+     * The theoretical arrival time of the next frame, in [clock] nanoseconds.
+     */
+    private val arrival = AtomicLong(Long.MIN_VALUE)
+
+    /**
+     * Handles a received frame according to the [policy]. It returns whether the frame must be processed:
+     * [IngressPolicy.DELAY] suspends until the frame is within the limit, while [IngressPolicy.DROP] and
+     * [IngressPolicy.DISCONNECT] reject it straight away.
+     */
+    suspend fun admit(): Boolean {
+        val now = clock()
+        if (policy == IngressPolicy.DELAY) {
+            val wait = reserve(now)
+            if (wait > 0) {
+                metrics.delayed()
+                delay(TimeUnit.NANOSECONDS.toMillis(wait).coerceAtLeast(1))
+            }
+            return true
+        }
+        if (tryAcquire(now)) return true
+        when (policy) {
+            IngressPolicy.DISCONNECT -> metrics.disconnected()
+            else -> metrics.dropped()
+        }
+        return false
+    }
+
+    /**
+     * Takes a token if there is one available at [now], and returns whether it did.
+     */
+    internal fun tryAcquire(now: Long): Boolean {
+        while (true) {
+            val current = arrival.get()
+            val next = maxOf(current, now) + interval
+            if (next - now > tolerance) return false
+            if (arrival.compareAndSet(current, next)) return true
+        }
+    }
+
+    /**
+     * Takes the next token even if it is not available yet, and returns how many nanoseconds from [now] it takes
+     * to be available.
+     */
+    internal fun reserve(now: Long): Long {
+        while (true) {
+            val current = arrival.get()
+            val next = maxOf(current, now) + interval
+            if (arrival.compareAndSet(current, next)) return maxOf(0, next - now - tolerance)
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package application.server.ingress
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Counters shared by all the [IngressLimiter]s of a server.
+ */
+class IngressMetrics {
+
+    private val dropped = LongAdder()
+    private val delayed = LongAdder()
+    private val disconnected = LongAdder()
+
+    /**
+     * The number of received frames discarded by the [IngressPolicy.DROP] policy.
+     */
+    val droppedFrames: Long
+        get() = dropped.sum()
+
+    /**
+     * The number of received frames held back by the [IngressPolicy.DELAY] policy.
+     */
+    val delayedFrames: Long
+        get() = delayed.sum()
+
+    /**
+     * The number of sockets closed by the [IngressPolicy.DISCONNECT] policy.
+     */
+    val disconnectedSockets: Long
+        get() = disconnected.sum()
+
+    /**
+     * The number of received frames above the limit, whatever the policy applied to them.
+     */
+    val throttledFrames: Long
+        get() = droppedFrames + delayedFrames + disconnectedSockets
+
+    internal fun dropped() = dropped.increment()
+
+    internal fun delayed() = delayed.increment()
+
+    internal fun disconnected() = disconnected.increment()
+}
@@ -0,0 +1,30 @@
+package application.server.ingress
+
+/**
+ * Defines what happens with the frames a client sends above its rate limit.
+ */
+enum class IngressPolicy {
+    /**
+     * Discards the frame, so the client keeps its connection but loses its excess messages.
+     */
+    DROP,
+
+    /**
+     * Holds the frame until the client is within its limit again. Since the socket is not read meanwhile,
+     * the flooding client is slowed down by TCP backpressure.
+     */
+    DELAY,
+
+    /**
+     * Closes the socket of the flooding client.
+     */
+    DISCONNECT;
+
+    companion object {
+        /**
+         * Parses a policy from its configuration name, e.g. `drop`.
+         */
+        fun parse(value: String): IngressPolicy =
+            valueOf(value.trim().uppercase().replace('-', '_'))
+    }
+}
@@ -0,0 +1,214 @@
+package application.server.log
+
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * A memory-mapped file holding the records of a [MessageLog] from [baseOffset] on, alongside its sparse index.
+ *
+ * Each record is laid out as `[size: Int][offset: Long][payload: size bytes]`. The size is written last, so a record
+ * whose size is still zero (the content of a fresh mapped file) was never completely appended.
+ * Every [indexInterval] bytes of records, the index gets an entry `[offset - baseOffset: Int][position: Int]`,
+ * which bounds the bytes scanned to find an offset, or to find the end of the segment when it is opened again.
+ *
+ * A segment is appended by a single writer at a time, while any number of readers read the records it committed.
+ */
+internal class LogSegment private constructor(
+    val baseOffset: Long,
+    private val logFile: Path,
+    private val indexFile: Path,
+    private val log: MappedByteBuffer,
+    private val index: MappedByteBuffer,
+    private val indexInterval: Int,
+) {
+
+    /**
+     * The number of bytes of committed records. Readers never go past it.
+     */
+    @Volatile
+    var size: Int = 0
+        private set
+
+    /**
+     * The offset the next appended record will get.
+     */
+    @Volatile
+    var nextOffset: Long = baseOffset
+        private set
+
+    private var indexEntries = 0
+    private var bytesSinceIndexed = 0
+
+    /**
+     * Appends a record at [offset], which must be [nextOffset].
+     * @return false if the record does not fit in this segment, which must then be rolled.
+     */
+    fun append(offset: Long, payload: ByteBuffer): Boolean {
+        check(offset == nextOffset) { "expected offset $nextOffset but got $offset" }
+        val length = payload.remaining()
+        val position = size
+        if (position + HEADER_SIZE + length > log.capacity()) return false
+        val indexed = indexEntries == 0 || bytesSinceIndexed >= indexInterval
+        if (indexed && (indexEntries + 1) * INDEX_ENTRY_SIZE > index.capacity()) return false
+
+        val view = log.duplicate()
+        view.position(position + HEADER_SIZE)
+        view.put(payload.duplicate())
+        log.putLong(position + Int.SIZE_BYTES, offset)
+        log.putInt(position, length)
+
+        if (indexed) {
+            index.putInt(indexEntries * INDEX_ENTRY_SIZE, (offset - baseOffset).toInt())
+            index.putInt(indexEntries * INDEX_ENTRY_SIZE + Int.SIZE_BYTES, position)
+            indexEntries++
+            bytesSinceIndexed = 0
+        }
+        bytesSinceIndexed += HEADER_SIZE + length
+        nextOffset = offset + 1
+        size = position + HEADER_SIZE + length
+        return true
+    }
+
+    /**
+     * Reads the committed records from offset [from] on, while [action] returns true.
+     * Payloads are read-only views of the mapped file, so they are valid only as long as the file is not rewritten
+     * and must be copied if kept.
+     * @return the offset after the last record read.
+     */
+    fun read(from: Long, action: (offset: Long, payload: ByteBuffer) -> Boolean): Long {
+        val end = size
+        var offset = maxOf(from, baseOffset)
+        if (offset >= nextOffset) return offset
+        var position = seek(offset)
+        while (position < end) {
+            val length = log.getInt(position)
+            val recordOffset = log.getLong(position + Int.SIZE_BYTES)
+            if (recordOffset >= offset) {
+                val view = log.duplicate()
+                view.position(position + HEADER_SIZE)
+                view.limit(position + HEADER_SIZE + length)
+                offset = recordOffset + 1
+                if (!action(recordOffset, view.slice().asReadOnlyBuffer())) break
+            }
+            position += HEADER_SIZE + length
+        }
+        return offset
+    }
+
+    /**
+     * Flushes the mapped files to the storage device.
+     */
+    fun flush() {
+        log.force()
+        index.force()
+    }
+
+    /**
+     * Deletes the files of this segment. Readers still holding it can read it until they are done.
+     */
+    fun delete() {
+        Files.deleteIfExists(logFile)
+        Files.deleteIfExists(indexFile)
+    }
+
+    /**
+     * Finds the position of the last indexed record at or before [offset].
+     */
+    private fun seek(offset: Long): Int {
+        val relative = offset - baseOffset
+        var low = 0
+        var high = indexEntries - 1
+        var position = 0
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            if (index.getInt(middle * INDEX_ENTRY_SIZE) <= relative) {
+                position = index.getInt(middle * INDEX_ENTRY_SIZE + Int.SIZE_BYTES)
+                low = middle + 1
+            } else {
+                high = middle - 1
+            }
+        }
+        return position
+    }
+
+    /**
+     * Restores [size], [nextOffset] and the index state of a segment that was opened again.
+     * Index entries are written in order and only the first one can have position zero, so the last one is found by
+     * a binary search, and only the records after it need to be scanned.
+     */
+    private fun recover() {
+        val capacity = index.capacity() / INDEX_ENTRY_SIZE
+        var low = 1
+        var high = capacity - 1
+        var last = 0
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            if (index.getInt(middle * INDEX_ENTRY_SIZE + Int.SIZE_BYTES) > 0) {
+                last = middle
+                low = middle + 1
+            } else {
+                high = middle - 1
+            }
+        }
+        var position = index.getInt(last * INDEX_ENTRY_SIZE + Int.SIZE_BYTES)
+        var offset = baseOffset + index.getInt(last * INDEX_ENTRY_SIZE)
+        val indexedPosition = position
+        while (position + HEADER_SIZE <= log.capacity()) {
+            val length = log.getInt(position)
+            if (length <= 0 || position + HEADER_SIZE + length > log.capacity()) break
+            if (log.getLong(position + Int.SIZE_BYTES) != offset) break
+            position += HEADER_SIZE + length
+            offset++
+        }
+        // A segment without records has no valid index entry, not even the first.
+        indexEntries = if (position == 0) 0 else last + 1
+        bytesSinceIndexed = position - indexedPosition
+        nextOffset = offset
+        size = position
+    }
+
+    companion object {
+        private const val HEADER_SIZE = Int.SIZE_BYTES + Long.SIZE_BYTES
+        private const val INDEX_ENTRY_SIZE = 2 * Int.SIZE_BYTES
+
+        /**
+         * The overhead in bytes of each record, besides its payload.
+         */
+        const val RECORD_OVERHEAD = HEADER_SIZE
+
+        /**
+         * Opens the segment starting at [baseOffset] in [directory], creating its files if they do not exist.
+         */
+        fun open(directory: Path, baseOffset: Long, segmentBytes: Int, indexInterval: Int): LogSegment {
+            val name = "%020d".format(baseOffset)
+            val logFile = directory.resolve("$name$LOG_SUFFIX")
+            val indexFile = directory.resolve("$name$INDEX_SUFFIX")
+            val indexBytes = (segmentBytes / indexInterval + 2) * INDEX_ENTRY_SIZE
+            return LogSegment(
+                baseOffset,
+                logFile,
+                indexFile,
+                map(logFile, segmentBytes),
+                map(indexFile, indexBytes),
+                indexInterval
+            ).apply { recover() }
+        }
+
+        /**
+         * Maps a file, whose size is kept if it already exists, since the segment size might have been reconfigured.
+         */
+        private fun map(file: Path, bytes: Int): MappedByteBuffer =
+            FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                .use { channel ->
+                    val size = if (channel.size() > 0) channel.size() else bytes.toLong()
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, size)
+                }
+
+        const val LOG_SUFFIX = ".log"
+        const val INDEX_SUFFIX = ".index"
+    }
+}
@@ -0,0 +1,114 @@
+package application.server.log
+
+import java.io.Closeable
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.util.concurrent.ConcurrentSkipListMap
+import kotlin.io.path.listDirectoryEntries
+import kotlin.io.path.name
+
+/**
+ * A persistent, append-only log of messages, where each message is identified by its offset in the log.
+ *
+ * The log is split in memory-mapped segment files. The active segment is rolled once full and only the latest
+ * [MessageLogConfig.retainedSegments] are kept. Messages are read as views of the mapped files, so reading them
+ * copies nothing. When the log is opened again, each segment recovers its end from its sparse index,
+ * instead of scanning the whole file.
+ */
+class MessageLog(private val config: MessageLogConfig) : Closeable {
+
+    private val segments = ConcurrentSkipListMap<Long, LogSegment>()
+
+    @Volatile
+    private var active: LogSegment
+
+    init {
+        Files.createDirectories(config.directory)
+        config.directory.listDirectoryEntries("*${LogSegment.LOG_SUFFIX}")
+            .mapNotNull { it.name.removeSuffix(LogSegment.LOG_SUFFIX).toLongOrNull() }
+            .forEach { baseOffset -> segments[baseOffset] = openSegment(baseOffset) }
+        active = segments.lastEntry()?.value ?: openSegment(0).also { segments[0] = it }
+    }
+
+    /**
+     * The maximum number of messages replayed to a socket resuming from an offset.
+     */
+    val replayLimit: Int
+        get() = config.replayLimit
+
+    /**
+     * The offset of the oldest message still in the log.
+     */
+    val startOffset: Long
+        get() = segments.firstKey()
+
+    /**
+     * The offset the next appended message will get.
+     */
+    val nextOffset: Long
+        get() = active.nextOffset
+
+    /**
+     * Appends a [payload] to the log.
+     * @return the offset of the appended message.
+     * @throws IllegalArgumentException if the payload does not fit in a segment.
+     */
+    @Synchronized
+    fun append(payload: ByteBuffer): Long {
+        require(payload.remaining() + LogSegment.RECORD_OVERHEAD <= config.segmentBytes) {
+            "message of ${payload.remaining()} bytes does not fit in a segment"
+        }
+        val offset = active.nextOffset
+        if (!active.append(offset, payload)) {
+            roll(offset)
+            check(active.append(offset, payload))
+        }
+        return offset
+    }
+
+    /**
+     * Reads at most [max] messages from offset [from] on, in order.
+     * Offsets no longer retained are skipped, so reading from zero reads from the oldest message available.
+     * The payloads are read-only views of the log, which must be copied if kept after [action] returns.
+     * @return the offset after the last message read, which can be used to resume reading.
+     */
+    fun read(from: Long, max: Int, action: (offset: Long, payload: ByteBuffer) -> Unit): Long {
+        var remaining = max
+        var offset = from
+        var entry = segments.floorEntry(from) ?: segments.firstEntry()
+        while (entry != null && remaining > 0) {
+            offset = entry.value.read(offset) { messageOffset, payload ->
+                action(messageOffset, payload)
+                --remaining > 0
+            }
+            entry = segments.higherEntry(entry.key)
+        }
+        return offset
+    }
+
+    /**
+     * Reads the latest [count] messages, in order.
+     */
+    fun tail(count: Int, action: (offset: Long, payload: ByteBuffer) -> Unit): Long =
+        read(maxOf(nextOffset - count, 0), count, action)
+
+    /**
+     * Flushes the active segment to the storage device.
+     */
+    override fun close() {
+        active.flush()
+    }
+
+    private fun roll(baseOffset: Long) {
+        active.flush()
+        val segment = openSegment(baseOffset)
+        segments[baseOffset] = segment
+        active = segment
+        while (segments.size > config.retainedSegments) {
+            segments.pollFirstEntry()?.value?.delete()
+        }
+    }
+
+    private fun openSegment(baseOffset: Long) =
+        LogSegment.open(config.directory, baseOffset, config.segmentBytes, config.indexIntervalBytes)
+}
@@ -0,0 +1,26 @@
+package application.server.log
+
+import java.nio.file.Path
+
+/**
+ * Holds the settings of a [MessageLog].
+ * @property directory The directory holding the segment files.
+ * @property segmentBytes The size of each segment file, which is rolled once full.
+ * @property indexIntervalBytes The number of record bytes between two entries of the sparse index of a segment.
+ * @property retainedSegments The number of segments kept, the oldest ones are deleted when a segment is rolled.
+ * @property replayLimit The maximum number of messages replayed to a socket resuming from an offset.
+ */
+data class MessageLogConfig(
+    val directory: Path,
+    val segmentBytes: Int = 16 * 1024 * 1024,
+    val indexIntervalBytes: Int = 4 * 1024,
+    val retainedSegments: Int = 8,
+    val replayLimit: Int = 100,
+) {
+    init {
+        require(segmentBytes > LogSegment.RECORD_OVERHEAD) { "segmentBytes is too small" }
+        require(indexIntervalBytes > 0) { "indexIntervalBytes must be positive" }
+        require(retainedSegments > 0) { "retainedSegments must be positive" }
+        require(replayLimit >= 0) { "replayLimit must not be negative" }
+    }
+}
@@ -0,0 +1,63 @@
+package application.server.members
+
+import application.server.outbound.OutboundQueue
+import application.server.outbound.SharedFrame
+import io.ktor.websocket.*
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * A member of the server, identified by its session [id], with its [name] and the sockets it has open.
+ * Since a browser is able to open several tabs and windows with the same cookies and thus the same session,
+ * there might be several opened sockets for the same member, each one wrapped in its own [OutboundQueue].
+ *
+ * Sockets are only added and removed by the [MemberRegistry] while it holds the entry of the member, so their
+ * [count] is exact, while broadcasts iterate them without any lock or copy. Names are unique, see [MemberRegistry].
+ */
+class Member internal constructor(val id: String, name: String) {
+
+    @Volatile
+    var name: String = name
+        internal set
+
+    /**
+     * Whether the last socket of the member left, after which its name can not change anymore.
+     * Guarded by the member itself.
+     */
+    internal var left = false
+
+    private val queues = ConcurrentLinkedQueue<OutboundQueue>()
+
+    /**
+     * The number of sockets of the member.
+     */
+    var count = 0
+        private set
+
+    /**
+     * The sockets of the member, which can be iterated while others are added or removed.
+     */
+    val sockets: Iterable<OutboundQueue>
+        get() = queues
+
+    /**
+     * Enqueues a [frame] to the outbound queues of all the sockets of the member, which share its payload.
+     * Failures to write are handled by each [OutboundQueue] writer.
+     */
+    fun send(frame: SharedFrame) {
+        for (queue in queues) {
+            queue.offer(frame)
+        }
+    }
+
+    internal fun add(queue: OutboundQueue) {
+        queues.add(queue)
+        count++
+    }
+
+    internal fun remove(socket: WebSocketSession): OutboundQueue? {
+        val queue = queues.find { it.socket == socket } ?: return null
+        queues.remove(queue)
+        count--
+        return queue
+    }
+}
@@ -0,0 +1,122 @@
+package application.server.members
+
+import application.server.outbound.OutboundQueue
+import io.ktor.websocket.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps the [Member]s of a server, partitioned by session ID in a fixed number of shards.
+ *
+ * Each member is a single record holding both its name and its sockets, so they never disagree.
+ * A socket joining or leaving only locks the entry of its member, within its shard, which makes the first socket of
+ * a member creating it, and the last one removing it, atomic with the other sockets of that member only.
+ *
+ * Members are also indexed by name, so a member can be [found by name][named] in constant time. Names are unique:
+ * each member claims its name in the index before taking it, and releases it once renamed or gone, only locking
+ * the member itself.
+ */
+class MemberRegistry(shardCount: Int) {
+
+    init {
+        require(shardCount > 0) { "shardCount must be positive" }
+    }
+
+    /**
+     * The outcome of a socket joining: the [member] it belongs to, and whether it is the [first] socket of the member.
+     */
+    class Arrival(val member: Member, val first: Boolean)
+
+    /**
+     * The outcome of a socket leaving: the [queue] of the socket, and whether it was the [last] socket of the
+     * [member], which is then no longer registered.
+     */
+    class Departure(val member: Member, val queue: OutboundQueue, val last: Boolean)
+
+    private val shards = Array(shardCount) { ConcurrentHashMap<String, Member>() }
+    private val names = ConcurrentHashMap<String, Member>()
+
+    /**
+     * The number of members with at least one socket.
+     */
+    val size: Int
+        get() = shards.sumOf { it.size }
+
+    /**
+     * Gets the member identified by a session [id], or null if it has no sockets.
+     */
+    operator fun get(id: String): Member? =
+        shardOf(id)[id]
+
+    /**
+     * Gets the member with a [name], or null if no member has it.
+     */
+    fun named(name: String): Member? =
+        names[name]
+
+    /**
+     * Adds the [queue] of a new socket to the member identified by a session [id],
+     * creating the member if it has no sockets yet, with the first of the names given by [name] that is not taken.
+     */
+    fun join(id: String, queue: OutboundQueue, name: () -> String): Arrival {
+        var first = false
+        val member = shardOf(id).compute(id) { _, current ->
+            (current ?: create(id, name).also { first = true }).also { it.add(queue) }
+        }!!
+        return Arrival(member, first)
+    }
+
+    private fun create(id: String, name: () -> String): Member {
+        while (true) {
+            val member = Member(id, name())
+            if (names.putIfAbsent(member.name, member) == null) return member
+        }
+    }
+
+    /**
+     * Renames a [member] [to] a name, unless another member has it already.
+     * @return whether the member has the name now.
+     */
+    fun rename(member: Member, to: String): Boolean {
+        synchronized(member) {
+            if (member.left) return false
+            val owner = names.putIfAbsent(to, member)
+            if (owner != null) return owner === member
+            names.remove(member.name, member)
+            member.name = to
+            return true
+        }
+    }
+
+    /**
+     * Removes a [socket] from the member identified by a session [id], and the member itself if it was its last one.
+     * @return what changed, or null if the socket was not registered.
+     */
+    fun leave(id: String, socket: WebSocketSession): Departure? {
+        var departure: Departure? = null
+        shardOf(id).computeIfPresent(id) { _, member ->
+            val queue = member.remove(socket) ?: return@computeIfPresent member
+            val last = member.count == 0
+            departure = Departure(member, queue, last)
+            if (!last) return@computeIfPresent member
+            synchronized(member) {
+                member.left = true
+                names.remove(member.name, member)
+            }
+            null
+        }
+        return departure
+    }
+
+    /**
+     * Calls an [action] with every member, without locking them, so members joining or leaving meanwhile may be
+     * missed.
+     */
+    fun forEach(action: (Member) -> Unit) {
+        for (shard in shards) {
+            shard.values.forEach(action)
+        }
+    }
+
+    private fun shardOf(id: String) =
+        shards[Math.floorMod(id.hashCode(), shards.size)]
+}
@@ -0,0 +1,46 @@
+package application.server.metrics
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Counters and latency histograms of the chat traffic of a server.
+ * The frames written and the failed sockets are counted by the outbound queues, see `OutboundMetrics`.
+ */
+class ChatMetrics {
+
+    private val received = LongAdder()
+    private val sockets = AtomicLong()
+
+    /**
+     * How long it takes to enqueue a frame to all the sockets of a room.
+     */
+    val broadcastLatency = LatencyHistogram()
+
+    /**
+     * How long it takes to enqueue the latest messages of a room to a socket joining it.
+     */
+    val replayLatency = LatencyHistogram()
+
+    /**
+     * The number of frames received from the clients.
+     */
+    val receivedFrames: Long
+        get() = received.sum()
+
+    /**
+     * The number of open sockets.
+     */
+    val activeSockets: Long
+        get() = sockets.get()
+
+    internal fun received() = received.increment()
+
+    internal fun socketOpened() {
+        sockets.incrementAndGet()
+    }
+
+    internal fun socketClosed() {
+        sockets.decrementAndGet()
+    }
+}
@@ -0,0 +1,68 @@
+package application.server.metrics
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * A histogram of durations with fixed buckets, in the shape Prometheus expects: the count of durations up to each
+ * of the [bounds], plus their total count and sum.
+ * Recording only increments atomic counters, so it is lock-free and does not allocate.
+ * @property bounds The upper bounds of the buckets in nanoseconds, in increasing order.
+ */
+class LatencyHistogram(val bounds: LongArray = DEFAULT_BOUNDS) {
+
+    init {
+        require(bounds.isNotEmpty() && (1 until bounds.size).all { bounds[it - 1] < bounds[it] }) {
+            "bounds must be in increasing order"
+        }
+    }
+
+    // One more bucket for the durations above the last bound.
+    private val buckets = AtomicLongArray(bounds.size + 1)
+    private val total = LongAdder()
+    private val sum = LongAdder()
+
+    /**
+     * The number of recorded durations.
+     */
+    val count: Long
+        get() = total.sum()
+
+    /**
+     * The sum of the recorded durations in nanoseconds.
+     */
+    val sumNanos: Long
+        get() = sum.sum()
+
+    /**
+     * Records a duration in nanoseconds.
+     */
+    fun record(nanos: Long) {
+        var bucket = 0
+        while (bucket < bounds.size && nanos > bounds[bucket]) bucket++
+        buckets.incrementAndGet(bucket)
+        total.increment()
+        sum.add(nanos)
+    }
+
+    /**
+     * Records the time elapsed since [startNanos], as returned by [System.nanoTime].
+     */
+    fun recordSince(startNanos: Long) = record(System.nanoTime() - startNanos)
+
+    /**
+     * Returns the number of recorded durations up to the bound at [index] (cumulative, as in Prometheus).
+     */
+    fun cumulativeCount(index: Int): Long {
+        var count = 0L
+        for (bucket in 0..index) count += buckets.get(bucket)
+        return count
+    }
+
+    companion object {
+        val DEFAULT_BOUNDS = longArrayOf(10, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 50_000, 100_000, 1_000_000)
+            .map { TimeUnit.MICROSECONDS.toNanos(it) }
+            .toLongArray()
+    }
+}
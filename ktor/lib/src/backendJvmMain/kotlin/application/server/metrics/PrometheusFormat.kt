@@ -0,0 +1,81 @@
+package application.server.metrics
+
+import application.server.ChatServer
+
+/**
+ * Writes the metrics of a [ChatServer] in the Prometheus text exposition format, served at `/metrics`.
+ */
+fun ChatServer.prometheusMetrics(): String = buildString {
+    counter("chat_received_frames_total", "Frames received from the clients", metrics.receivedFrames)
+    counter("chat_sent_frames_total", "Frames written to the sockets", outboundMetrics.sentFrames)
+    counter(
+        "chat_send_failures_total",
+        "Sockets closed because a frame could not be written",
+        outboundMetrics.failedSockets,
+    )
+    gauge("chat_queued_frames", "Frames waiting to be written, across all the sockets", outboundMetrics.queuedFrames)
+    counter(
+        "chat_dropped_frames_total",
+        "Frames discarded because of a full outbound queue",
+        outboundMetrics.droppedFrames,
+    )
+    counter(
+        "chat_evicted_sockets_total",
+        "Sockets closed for not keeping up with their traffic",
+        outboundMetrics.evictedSockets,
+    )
+    counter(
+        "chat_throttled_frames_total",
+        "Received frames above the rate limit of their socket",
+        ingressMetrics.throttledFrames,
+    )
+    counter("chat_upgrades_accepted_total", "Websocket upgrades admitted", admissionMetrics.acceptedUpgrades)
+    counter(
+        "chat_upgrades_queued_total",
+        "Websocket upgrades that waited for a socket to close",
+        admissionMetrics.queuedUpgrades,
+    )
+    counter(
+        "chat_upgrades_rejected_total",
+        "Websocket upgrades rejected by a connection cap",
+        admissionMetrics.rejectedUpgrades,
+    )
+    gauge("chat_pending_upgrades", "Websocket upgrades waiting to be admitted", admissionMetrics.pendingUpgrades)
+    gauge("chat_active_members", "Members with at least one open socket", memberCount.toLong())
+    gauge("chat_active_sockets", "Open sockets", metrics.activeSockets)
+    histogram(
+        "chat_broadcast_duration_seconds",
+        "Time to enqueue a frame to all the sockets of a room",
+        metrics.broadcastLatency,
+    )
+    histogram("chat_history_replay_duration_seconds", "Time to replay the history to a socket", metrics.replayLatency)
+}
+
+private fun StringBuilder.counter(name: String, help: String, value: Long) = metric(name, "counter", help, value)
+
+private fun StringBuilder.gauge(name: String, help: String, value: Long) = metric(name, "gauge", help, value)
+
+private fun StringBuilder.metric(name: String, type: String, help: String, value: Long) {
+    header(name, type, help)
+    append(name).append(' ').append(value).append('\n')
+}
+
+private fun StringBuilder.histogram(name: String, help: String, histogram: LatencyHistogram) {
+    header(name, "histogram", help)
+    histogram.bounds.forEachIndexed { index, bound ->
+        append(name).append("_bucket{le=\"").append(bound / NANOS_PER_SECOND).append("\"} ")
+            .append(histogram.cumulativeCount(index)).append('\n')
+    }
+    // Counted from the buckets, so the total matches them even while durations are being recorded.
+    val count = histogram.cumulativeCount(histogram.bounds.size)
+    append(name).append("_bucket{le=\"+Inf\"} ").append(count).append('\n')
+    append(name).append("_sum ").append(histogram.sumNanos / NANOS_PER_SECOND).append('\n')
+    append(name).append("_count ").append(count).append('\n')
+}
+
+private fun StringBuilder.header(name: String, type: String, help: String) {
+    append("# HELP ").append(name).append(' ').append(help).append('\n')
+    append("# TYPE ").append(name).append(' ').append(type).append('\n')
+}
+
+private const val NANOS_PER_SECOND = 1e9
@@ -0,0 +1,62 @@
+package application.server.outbound
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Counters shared by all the [OutboundQueue]s of a server.
+ */
+class OutboundMetrics {
+
+    private val depth = AtomicLong()
+    private val dropped = LongAdder()
+    private val evicted = LongAdder()
+    private val sent = LongAdder()
+    private val failed = LongAdder()
+
+    /**
+     * The number of frames currently waiting to be written, summed across all the sockets.
+     */
+    val queuedFrames: Long
+        get() = depth.get()
+
+    /**
+     * The number of frames discarded because of a full queue.
+     */
+    val droppedFrames: Long
+        get() = dropped.sum()
+
+    /**
+     * The number of sockets closed by the [OverflowPolicy.DISCONNECT] policy.
+     */
+    val evictedSockets: Long
+        get() = evicted.sum()
+
+    /**
+     * The number of frames written to the sockets.
+     */
+    val sentFrames: Long
+        get() = sent.sum()
+
+    /**
+     * The number of sockets closed because a frame could not be written to them.
+     */
+    val failedSockets: Long
+        get() = failed.sum()
+
+    internal fun enqueued() {
+        depth.incrementAndGet()
+    }
+
+    internal fun dequeued(count: Int = 1) {
+        depth.addAndGet(-count.toLong())
+    }
+
+    internal fun dropped() = dropped.increment()
+
+    internal fun evicted() = evicted.increment()
+
+    internal fun sent() = sent.increment()
+
+    internal fun failed() = failed.increment()
+}
@@ -0,0 +1,133 @@
+package application.server.outbound
+
+import io.ktor.websocket.*
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ClosedSendChannelException
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A bounded queue of frames waiting to be written to a [socket].
+ *
+ * Frames are [offer]ed as [SharedFrame]s without suspending and a writer coroutine, launched in the socket's own scope, drains the
+ * queue. This way a slow or stalled socket only delays itself and never the code that fans out a message.
+ * When the queue is full, the [policy] decides what to do.
+ * Sockets speaking the [binary] protocol get the frames as binary records.
+ */
+class OutboundQueue(
+    val socket: WebSocketSession,
+    capacity: Int,
+    private val policy: OverflowPolicy,
+    private val metrics: OutboundMetrics,
+    private val binary: Boolean = false,
+) {
+
+    private val channel = Channel<SharedFrame>(capacity)
+    private val depth = AtomicInteger()
+
+    /**
+     * The number of frames currently waiting to be written.
+     */
+    val size: Int
+        get() = depth.get()
+
+    private val writer: Job = socket.launch {
+        try {
+            for (frame in channel) {
+                depth.decrementAndGet()
+                metrics.dequeued()
+                socket.send(frame.frame(binary))
+                metrics.sent()
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (t: Throwable) {
+            metrics.failed()
+            try {
+                socket.close(CloseReason(CloseReason.Codes.PROTOCOL_ERROR, ""))
+            } catch (ignore: ClosedSendChannelException) {
+                // at some point it will get closed
+            }
+        } finally {
+            // Whatever the reason the writer stopped, no more frames will be written to this socket.
+            channel.close()
+            discardPending()
+        }
+    }
+
+    /**
+     * Enqueues a [frame] without suspending.
+     * @return true if the frame was queued, false if it was dropped or the queue is closed.
+     */
+    fun offer(frame: SharedFrame): Boolean {
+        while (true) {
+            depth.incrementAndGet()
+            val result = channel.trySend(frame)
+            if (result.isSuccess) {
+                metrics.enqueued()
+                return true
+            }
+            depth.decrementAndGet()
+            if (result.isClosed) return false
+            when (policy) {
+                OverflowPolicy.DROP_NEWEST -> {
+                    metrics.dropped()
+                    return false
+                }
+
+                OverflowPolicy.DROP_OLDEST -> {
+                    // The writer may have drained a frame meanwhile, in which case there is nothing to evict
+                    // and the next attempt will simply succeed.
+                    if (channel.tryReceive().isSuccess) {
+                        depth.decrementAndGet()
+                        metrics.dequeued()
+                        metrics.dropped()
+                    }
+                }
+
+                OverflowPolicy.DISCONNECT -> {
+                    evict()
+                    return false
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting frames. The frames already queued are still written.
+     */
+    fun close() {
+        channel.close()
+    }
+
+    /**
+     * Closes the socket because it can not keep up with its traffic.
+     */
+    private fun evict() {
+        if (!channel.close()) return
+        metrics.evicted()
+        writer.cancel()
+        socket.launch {
+            // The socket is already slow, so closing it gracefully might never finish.
+            withTimeoutOrNull(EVICTION_CLOSE_TIMEOUT_MILLIS) {
+                socket.close(CloseReason(CloseReason.Codes.TRY_AGAIN_LATER, "Slow consumer"))
+            }
+            socket.cancel()
+        }
+    }
+
+    private fun discardPending() {
+        while (channel.tryReceive().isSuccess) {
+            depth.decrementAndGet()
+            metrics.dequeued()
+        }
+    }
+
+    private companion object {
+        const val EVICTION_CLOSE_TIMEOUT_MILLIS = 1000L
+    }
+}
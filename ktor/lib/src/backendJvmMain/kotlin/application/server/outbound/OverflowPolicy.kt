@@ -0,0 +1,30 @@
+package application.server.outbound
+
+/**
+ * Defines what happens when a socket's outbound queue is full, which usually means that the client on the other side
+ * is not reading its frames fast enough (e.g. a mobile client on a bad link).
+ */
+enum class OverflowPolicy {
+    /**
+     * Evicts the oldest queued frame to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discards the new frame and keeps the ones already queued.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Closes the slow socket, so it does not hold any more memory.
+     */
+    DISCONNECT;
+
+    companion object {
+        /**
+         * Parses a policy from its configuration name, e.g. `drop-oldest`.
+         */
+        fun parse(value: String): OverflowPolicy =
+            valueOf(value.trim().uppercase().replace('-', '_'))
+    }
+}
@@ -0,0 +1,94 @@
+package application.server.outbound
+
+import io.ktor.websocket.*
+import protocol.ChatRecord
+import protocol.MessageType
+import java.nio.ByteBuffer
+
+/**
+ * A message serialized to UTF-8 exactly once, whose bytes are shared by every socket it is sent to.
+ *
+ * Frames can not be shared themselves, because writing one consumes its buffer. So, instead of copying a frame
+ * (and its payload) for each socket, each socket gets a [frame] that wraps the same payload.
+ * The payload must never be modified after creation.
+ *
+ * Sockets speaking the binary protocol get the message as [ChatRecord]s instead, which are also encoded once,
+ * when the first binary socket needs them.
+ */
+class SharedFrame private constructor(
+    private val payload: ByteArray,
+    private val encodeRecords: () -> ByteArray,
+) {
+
+    @Volatile
+    private var records: ByteArray? = null
+
+    /**
+     * The size of the payload in bytes.
+     */
+    val size: Int
+        get() = payload.size
+
+    /**
+     * Wraps the shared payload in a new text frame, or the shared records in a new [binary] frame, without copying it.
+     */
+    fun frame(binary: Boolean = false): Frame =
+        if (binary) Frame.Binary(true, records()) else Frame.Text(true, payload)
+
+    /**
+     * Exposes the shared payload as a read-only buffer.
+     */
+    fun buffer(): ByteBuffer = ByteBuffer.wrap(payload).asReadOnlyBuffer()
+
+    /**
+     * Returns the message encoded as binary records, encoding them the first time.
+     * Concurrent first calls may encode them more than once, but all of them get equal records.
+     */
+    fun records(): ByteArray = records ?: encodeRecords().also { records = it }
+
+    /**
+     * Stamps the message with its [offset] in the persistent log, as a `#offset ` prefix for the text protocol,
+     * and as an [MessageType.OFFSET] record before its own records for the binary protocol.
+     */
+    fun at(offset: Long): SharedFrame {
+        val prefix = "$OFFSET_PREFIX$offset ".encodeToByteArray()
+        return SharedFrame(prefix + payload) { ChatRecord.encode(MessageType.OFFSET, payload = "$offset") + records() }
+    }
+
+    companion object {
+        /**
+         * Encodes a message of a given [type] from a [sender] to a [room] (if any), formatted as `[sender] text`
+         * for the text protocol.
+         */
+        fun message(type: MessageType, sender: String, room: String, text: String) =
+            SharedFrame("[$sender] $text".encodeToByteArray()) { ChatRecord.encode(type, sender, room, text) }
+
+        /**
+         * Encodes an already formatted [text] message to UTF-8.
+         */
+        fun text(text: String) = encoded(text.encodeToByteArray())
+
+        /**
+         * Wraps an already encoded UTF-8 text message, which must not be modified afterwards.
+         */
+        fun encoded(bytes: ByteArray) =
+            SharedFrame(bytes) { ChatRecord.encode(MessageType.TEXT, EMPTY, EMPTY, bytes) }
+
+        /**
+         * Wraps an already encoded UTF-8 text [payload] whose binary records are encoded by [records].
+         */
+        fun encoded(payload: ByteArray, records: () -> ByteArray) = SharedFrame(payload, records)
+
+        /**
+         * Copies an already encoded UTF-8 text message out of a [buffer], e.g. one read from a message log.
+         */
+        fun copyOf(buffer: ByteBuffer) = encoded(ByteArray(buffer.remaining()).also { buffer.duplicate().get(it) })
+
+        private val EMPTY = ByteArray(0)
+
+        /**
+         * The first character of the text messages stamped with their log offset.
+         */
+        const val OFFSET_PREFIX = '#'
+    }
+}
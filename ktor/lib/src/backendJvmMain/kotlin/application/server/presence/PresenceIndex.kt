@@ -0,0 +1,154 @@
+package application.server.presence
+
+import application.server.outbound.SharedFrame
+import protocol.MessageType
+
+/**
+ * The names of the members of the server (and cluster), kept in join order and updated incrementally on each join,
+ * rename and leave, each change bumping the [version] of the roster.
+ *
+ * The roster is serialized once per version, and shared by every `who` until the next change.
+ * The latest [deltaCapacity] changes are kept too, so a client holding an older version of the roster gets only
+ * what changed since then: `+name` for each member that joined, `-name` for each one that left (a rename is both).
+ */
+class PresenceIndex(private val deltaCapacity: Int = 256) {
+
+    private class Change(val version: Long, val joined: Boolean, val name: String)
+
+    private class Roster(val version: Long, val frame: SharedFrame)
+
+    // Guarded by this.
+    private val names = LinkedHashMap<String, String>()
+    private val changes = ArrayDeque<Change>()
+    private var currentVersion = 0L
+
+    /**
+     * The roster of the current version, or null once it changed until the next `who` serializes it again.
+     */
+    @Volatile
+    private var roster: Roster? = null
+
+    init {
+        require(deltaCapacity > 0) { "deltaCapacity must be positive" }
+    }
+
+    /**
+     * The version of the roster, which only grows.
+     */
+    val version: Long
+        @Synchronized get() = currentVersion
+
+    /**
+     * The number of members in the roster.
+     */
+    val size: Int
+        @Synchronized get() = names.size
+
+    /**
+     * Sets the [name] of a member identified by a [key], either joining or renaming it.
+     * Setting the name a member already has is not a change.
+     */
+    @Synchronized
+    fun put(key: String, name: String) {
+        val previous = names.put(key, name)
+        if (previous == name) return
+        currentVersion++
+        if (previous != null) record(Change(currentVersion, joined = false, previous))
+        record(Change(currentVersion, joined = true, name))
+        roster = null
+    }
+
+    /**
+     * Removes a member identified by a [key], if it is in the roster.
+     */
+    @Synchronized
+    fun remove(key: String) {
+        val name = names.remove(key) ?: return
+        currentVersion++
+        record(Change(currentVersion, joined = false, name))
+        roster = null
+    }
+
+    /**
+     * Replaces the members whose key starts with a [prefix], e.g. all the members of another node, by the [members]
+     * by key, in a single version. Keys of [members] must start with the [prefix].
+     */
+    @Synchronized
+    fun replace(prefix: String, members: Map<String, String>) {
+        val version = currentVersion + 1
+        val delta = ArrayList<Change>()
+        val iterator = names.entries.iterator()
+        while (iterator.hasNext()) {
+            val (key, name) = iterator.next()
+            if (key.startsWith(prefix) && key !in members) {
+                iterator.remove()
+                delta += Change(version, joined = false, name)
+            }
+        }
+        for ((key, name) in members) {
+            val previous = names.put(key, name)
+            if (previous == name) continue
+            if (previous != null) delta += Change(version, joined = false, previous)
+            delta += Change(version, joined = true, name)
+        }
+        if (delta.isEmpty()) return
+        currentVersion = version
+        // A delta that does not fit is not kept at all, so clients get the whole roster instead of a part of it.
+        if (delta.size >= deltaCapacity) changes.clear() else delta.forEach(::record)
+        roster = null
+    }
+
+    /**
+     * Returns the names of the members whose key has no [separator], e.g. the members of this node, by key.
+     */
+    @Synchronized
+    fun local(separator: Char): Map<String, String> = names.filterKeys { separator !in it }
+
+    private fun record(change: Change) {
+        if (changes.size == deltaCapacity) {
+            // Evicts whole versions, so the delta of a rename is never kept only in part.
+            val evicted = changes.removeFirst().version
+            while (changes.firstOrNull()?.version == evicted) changes.removeFirst()
+        }
+        changes.addLast(change)
+    }
+
+    /**
+     * Returns the whole roster as `[server::who@version] names`, serialized only once per version, so a client can
+     * ask for the changes [since] that version afterwards.
+     */
+    fun roster(): SharedFrame = cachedRoster().frame
+
+    /**
+     * Returns what changed in the roster since a client got its version [since], as `[server::presence@version] deltas`,
+     * or the whole roster as `[server::who@version] names` if those changes are not kept anymore.
+     */
+    fun since(since: Long): SharedFrame {
+        // Clients asking again for the version they hold do not even need the lock while nothing changes.
+        val cached = roster
+        if (cached != null && cached.version == since) return delta(since, emptyList())
+        synchronized(this) {
+            if (since == currentVersion) return delta(since, emptyList())
+            // The changes after [since] are all kept only if the oldest kept change is the one right after it.
+            val oldest = changes.firstOrNull()?.version
+            if (since > currentVersion || oldest == null || oldest > since + 1) return cachedRoster().frame
+            return delta(currentVersion, changes.filter { it.version > since })
+        }
+    }
+
+    private fun delta(version: Long, changes: List<Change>): SharedFrame =
+        SharedFrame.message(
+            MessageType.REPLY,
+            "server::presence@$version",
+            "",
+            changes.joinToString { (if (it.joined) "+" else "-") + it.name },
+        )
+
+    private fun cachedRoster(): Roster =
+        roster ?: synchronized(this) {
+            roster ?: Roster(
+                currentVersion,
+                SharedFrame.message(MessageType.REPLY, "server::who@$currentVersion", "", names.values.joinToString()),
+            ).also { roster = it }
+        }
+}
@@ -0,0 +1,50 @@
+package application.server.rooms
+
+import application.server.coalescing.MessageBatch
+import application.server.fanout.ShardedMembers
+import application.server.history.HistoryRing
+import application.server.outbound.SharedFrame
+import application.server.search.SearchConfig
+import application.server.search.SearchIndex
+
+/**
+ * A chat room, where messages are only sent to the room's own [members].
+ * @property members The index of the members in the room, which share their socket lists with the server.
+ * @property history The latest messages sent to the room.
+ * @property search The inverted index of the latest messages sent to the room, or null if searching is disabled.
+ */
+class Room(val name: String, shards: Int, historyCapacity: Int, search: SearchConfig? = null) {
+    val members = ShardedMembers(shards)
+    val history = HistoryRing<SharedFrame>(historyCapacity)
+    val search = search?.let { SearchIndex(it) }
+
+    private class Replay(val end: Long, val batchSize: Int, val frames: List<SharedFrame>)
+
+    /**
+     * The frames replaying the whole history, until a message is appended to it.
+     */
+    @Volatile
+    private var replay: Replay? = null
+
+    /**
+     * Returns the frames replaying the latest [limit] messages of the history, in batches of up to [batchSize].
+     * The frames replaying the whole history are reused by every member joining until the next message,
+     * so a burst of reconnections encodes them only once.
+     */
+    fun replay(batchSize: Int, limit: Int = history.capacity): List<SharedFrame> {
+        if (limit <= 0) return emptyList()
+        val whole = limit >= history.capacity
+        val cached = replay
+        if (whole && cached != null && cached.end == history.lastSequence + 1 && cached.batchSize == batchSize) {
+            return cached.frames
+        }
+        val snapshot = history.snapshot(from = history.lastSequence + 1 - limit)
+        val messages = snapshot.toList()
+        val frames = MessageBatch.chunked(messages, batchSize)
+        // A snapshot missing messages that were still being appended is not worth reusing.
+        if (whole && messages.size.toLong() == snapshot.end - snapshot.start) {
+            replay = Replay(snapshot.end, batchSize, frames)
+        }
+        return frames
+    }
+}
@@ -0,0 +1,97 @@
+package application.server.rooms
+
+import application.server.members.Member
+import application.server.search.SearchConfig
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps the rooms of a server and the room each member is in.
+ *
+ * Every member is in exactly one room, starting with the [lobby]. Rooms are created when a member first enters them
+ * and dropped when their last member leaves, except for the [lobby], which always exists.
+ * Entering and leaving a room only touch the entries of that member, so membership changes stay cheap under churn.
+ *
+ * Entries belong to a [Member] record, not just to its session ID: once the last socket of a member leaves, a new
+ * socket of the same session creates a new record, which a late [leave] of the previous record must not remove.
+ */
+class RoomRegistry(
+    private val shards: Int,
+    private val historyCapacity: Int,
+    private val search: SearchConfig? = null,
+) {
+
+    private val rooms = ConcurrentHashMap<String, Room>()
+    private val memberRooms = ConcurrentHashMap<String, Entry>()
+
+    private class Entry(val member: Member, val room: Room)
+
+    /**
+     * The room every member starts in.
+     */
+    val lobby = Room(LOBBY, shards, historyCapacity, search).also { rooms[LOBBY] = it }
+
+    /**
+     * Gets the room named [name], or null if it has no members.
+     */
+    operator fun get(name: String): Room? = rooms[name]
+
+    /**
+     * All the rooms with members, and the [lobby].
+     */
+    val all: Collection<Room>
+        get() = rooms.values
+
+    /**
+     * Gets the room named [name], creating it even without members, e.g. to restore its history.
+     * It is dropped once the last member entering it leaves.
+     */
+    fun restore(name: String): Room =
+        rooms.computeIfAbsent(name) { Room(name, shards, historyCapacity, search) }
+
+    /**
+     * Gets the room a [member] is in, or null if the member is not in any room.
+     */
+    fun roomOf(member: String): Room? = memberRooms[member]?.room
+
+    /**
+     * Moves a [member], and all its sockets, to the room named [name], creating it if required.
+     * @return the room entered and the room left, if any.
+     */
+    fun enter(member: Member, name: String): Pair<Room, Room?> {
+        val room = rooms.compute(name) { _, current ->
+            (current ?: Room(name, shards, historyCapacity, search)).also { it.members.put(member) }
+        }!!
+        val previous = memberRooms.put(member.id, Entry(member, room))
+        // The previous entry may belong to a previous record of the same session, which must leave its room too.
+        if (previous != null && (previous.room !== room || previous.member !== member)) {
+            leave(previous.room, previous.member)
+        }
+        return room to previous?.room?.takeIf { it !== room }
+    }
+
+    /**
+     * Removes a [member] from its room, unless a new record of the same session already replaced it.
+     * @return the room left, if any.
+     */
+    fun leave(member: Member): Room? {
+        var left: Room? = null
+        memberRooms.computeIfPresent(member.id) { _, entry ->
+            if (entry.member !== member) return@computeIfPresent entry
+            left = entry.room
+            null
+        }
+        return left?.also { leave(it, member) }
+    }
+
+    private fun leave(room: Room, member: Member) {
+        // Removing the member and dropping the room if it became empty must be atomic with members entering it.
+        rooms.computeIfPresent(room.name) { _, current ->
+            room.members.remove(member)
+            if (current === room && current !== lobby && room.members.isEmpty()) null else current
+        }
+    }
+
+    companion object {
+        const val LOBBY = "lobby"
+    }
+}
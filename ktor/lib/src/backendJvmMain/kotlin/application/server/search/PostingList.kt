@@ -0,0 +1,64 @@
+package application.server.search
+
+/**
+ * The increasing sequences of the messages holding a term, in a primitive array.
+ * Messages are only appended to the end and evicted from the start, since the index is a rolling window,
+ * so the list is a queue whose evicted space is reclaimed when it grows or becomes mostly empty.
+ */
+internal class PostingList {
+
+    private var items = LongArray(INITIAL_CAPACITY)
+    private var head = 0
+    private var tail = 0
+
+    val size: Int
+        get() = tail - head
+
+    /**
+     * Gets the sequence at [index], from 0 (the oldest) to [size] - 1 (the newest).
+     */
+    operator fun get(index: Int): Long = items[head + index]
+
+    fun add(sequence: Long) {
+        if (tail == items.size) resize(maxOf(INITIAL_CAPACITY, size * 2))
+        items[tail++] = sequence
+    }
+
+    /**
+     * Evicts the oldest sequence, if it is the given [sequence].
+     */
+    fun evict(sequence: Long) {
+        if (size == 0 || items[head] != sequence) return
+        head++
+        if (size < items.size / 4 && items.size > INITIAL_CAPACITY) resize(items.size / 2)
+    }
+
+    /**
+     * Whether the list holds a [sequence], looked up by binary search among the indexes up to [to].
+     * @return the index of the sequence, or the negated index it would have minus one.
+     */
+    fun search(sequence: Long, to: Int = size - 1): Int {
+        var low = 0
+        var high = to
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            val value = get(middle)
+            when {
+                value < sequence -> low = middle + 1
+                value > sequence -> high = middle - 1
+                else -> return middle
+            }
+        }
+        return -(low + 1)
+    }
+
+    private fun resize(capacity: Int) {
+        items = items.copyInto(LongArray(capacity), 0, head, tail)
+        tail = size
+        head = 0
+    }
+
+    private companion object {
+        const val INITIAL_CAPACITY = 4
+    }
+}
@@ -0,0 +1,16 @@
+package application.server.search
+
+/**
+ * Holds the settings of a [SearchIndex].
+ * @property window The number of latest messages indexed per room, older messages are evicted from the index.
+ * @property maxResults The maximum number of messages returned by a search.
+ */
+data class SearchConfig(
+    val window: Int = 100_000,
+    val maxResults: Int = 10,
+) {
+    init {
+        require(window > 0) { "window must be positive" }
+        require(maxResults > 0) { "maxResults must be positive" }
+    }
+}
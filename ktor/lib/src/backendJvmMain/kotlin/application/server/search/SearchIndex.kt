@@ -0,0 +1,128 @@
+package application.server.search
+
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * An inverted index of the latest messages of a room, updated as each message is [added][add] and evicting the oldest
+ * one once it holds its [window][SearchConfig.window] of messages.
+ *
+ * Each term maps to the [PostingList] of the sequences of the messages holding it. A search intersects the lists of
+ * its terms walking the shortest one from its newest message, and stops as soon as it has its results, so it
+ * returns the latest matches without scanning the whole window.
+ * Messages are added under a write lock, while searches share a read lock. Each room has its own index, so the
+ * messages of a room neither wait for the lock of the others nor show up in their posting lists.
+ * The message arrays grow with the messages, so quiet rooms take little memory.
+ */
+class SearchIndex(private val config: SearchConfig = SearchConfig()) {
+
+    /**
+     * A message matching a search: its [sender] name and its [text].
+     */
+    data class Hit(val sender: String, val text: String)
+
+    // Guarded by the lock, grown up to the window while the first messages are added.
+    private var senders = arrayOfNulls<String>(minOf(config.window, INITIAL_CAPACITY))
+    private var texts = arrayOfNulls<String>(minOf(config.window, INITIAL_CAPACITY))
+    private val postings = HashMap<String, PostingList>()
+    private val lock = ReentrantReadWriteLock()
+
+    // Guarded by the write lock.
+    private var next = 0L
+
+    /**
+     * The number of messages indexed.
+     */
+    val size: Int
+        get() = lock.read { minOf(next, config.window.toLong()).toInt() }
+
+    /**
+     * The number of distinct terms indexed.
+     */
+    val terms: Int
+        get() = lock.read { postings.size }
+
+    /**
+     * Indexes a message [text] sent by a [sender], evicting the oldest message if the window is full.
+     */
+    fun add(sender: String, text: String) {
+        val terms = terms(text)
+        lock.write {
+            val sequence = next++
+            // Until the window is full, the arrays hold the messages in order, so growing them keeps their slots.
+            if (sequence == texts.size.toLong() && texts.size < config.window) {
+                val capacity = minOf(config.window, texts.size * 2)
+                senders = senders.copyOf(capacity)
+                texts = texts.copyOf(capacity)
+            }
+            val slot = slot(sequence)
+            texts[slot]?.let { evicted -> evict(sequence - config.window, terms(evicted)) }
+            senders[slot] = sender
+            texts[slot] = text
+            for (term in terms) {
+                postings.getOrPut(term) { PostingList() }.add(sequence)
+            }
+        }
+    }
+
+    private fun evict(sequence: Long, terms: Set<String>) {
+        for (term in terms) {
+            val list = postings[term] ?: continue
+            list.evict(sequence)
+            if (list.size == 0) postings.remove(term)
+        }
+    }
+
+    /**
+     * Searches the latest messages holding all the terms of a [query], newest first.
+     */
+    fun search(query: String): List<Hit> {
+        val terms = terms(query)
+        if (terms.isEmpty()) return emptyList()
+        return lock.read {
+            val lists = terms.map { postings[it] ?: return emptyList() }.sortedBy { it.size }
+            val shortest = lists.first()
+            val others = lists.drop(1)
+            // The newest position each other list can still match at, which only moves towards older messages.
+            val bounds = IntArray(others.size) { others[it].size - 1 }
+            val hits = ArrayList<Hit>()
+            var index = shortest.size - 1
+            candidates@ while (index >= 0 && hits.size < config.maxResults) {
+                val sequence = shortest[index--]
+                for (i in others.indices) {
+                    val found = others[i].search(sequence, bounds[i])
+                    // Older candidates can only be found before the position of this one.
+                    bounds[i] = if (found >= 0) found else -(found + 1) - 1
+                    if (found < 0) continue@candidates
+                }
+                val slot = slot(sequence)
+                hits += Hit(senders[slot]!!, texts[slot]!!)
+            }
+            hits
+        }
+    }
+
+    private fun slot(sequence: Long) = (sequence % config.window).toInt()
+
+    /**
+     * Splits a [text] in its distinct lowercase terms, made of letters and digits.
+     */
+    private fun terms(text: String): Set<String> {
+        val terms = HashSet<String>()
+        var start = -1
+        for (i in 0..text.length) {
+            val inTerm = i < text.length && text[i].isLetterOrDigit()
+            if (inTerm && start < 0) start = i
+            if (!inTerm && start >= 0) {
+                terms += text.substring(start, i).lowercase()
+                start = -1
+            }
+        }
+        return terms
+    }
+
+    private companion object {
+        const val INITIAL_CAPACITY = 64
+    }
+}
@@ -0,0 +1,102 @@
+package application.server.snapshot
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+
+/**
+ * The state of a chat server that survives a restart.
+ * @property usersCounter The counter used to name new members.
+ * @property names The names of the members, by session ID.
+ * @property histories The already encoded latest messages of each room, oldest first.
+ */
+class ChatSnapshot(
+    val usersCounter: Int,
+    val names: Map<String, Name>,
+    val histories: Map<String, List<ByteBuffer>>,
+) {
+
+    /**
+     * The [name] of a member, and when it was last seen, in milliseconds since the epoch.
+     */
+    data class Name(val name: String, val lastSeenMillis: Long)
+
+    /**
+     * Writes the snapshot to a [file], replacing it only once fully written, so a crash while writing leaves
+     * the previous snapshot in place.
+     *
+     * The format is a header (`CHAT` and the format version), the users counter, the names as session ID, name and
+     * last seen time, and the histories as room names followed by their messages, each message as its length and bytes.
+     */
+    fun write(file: Path) {
+        file.toAbsolutePath().parent?.let { Files.createDirectories(it) }
+        val temporary = file.resolveSibling("${file.fileName}.tmp")
+        DataOutputStream(BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_BYTES)).use { output ->
+            output.writeInt(MAGIC)
+            output.writeByte(VERSION)
+            output.writeInt(usersCounter)
+            output.writeInt(names.size)
+            for ((id, name) in names) {
+                output.writeUTF(id)
+                output.writeUTF(name.name)
+                output.writeLong(name.lastSeenMillis)
+            }
+            output.writeInt(histories.size)
+            for ((room, messages) in histories) {
+                output.writeUTF(room)
+                output.writeInt(messages.size)
+                for (message in messages) {
+                    output.writeInt(message.remaining())
+                    val bytes = ByteArray(message.remaining()).also { message.duplicate().get(it) }
+                    output.write(bytes)
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    companion object {
+        private const val MAGIC = 0x43484154 // CHAT
+        private const val VERSION = 2
+        private const val BUFFER_BYTES = 64 * 1024
+
+        /**
+         * Reads the snapshot of a [file], or returns null if there is none.
+         * The names of a snapshot of the first version, which has no last seen times, are seen at [nowMillis].
+         * @throws IOException if the file is not a snapshot or is truncated.
+         */
+        fun read(file: Path, nowMillis: Long = System.currentTimeMillis()): ChatSnapshot? {
+            val input = try {
+                DataInputStream(BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES))
+            } catch (e: NoSuchFileException) {
+                return null
+            }
+            return input.use {
+                if (it.readInt() != MAGIC) throw IOException("$file is not a chat snapshot")
+                val version = it.readByte().toInt()
+                if (version !in 1..VERSION) throw IOException("Unsupported snapshot version $version")
+                val usersCounter = it.readInt()
+                val names = HashMap<String, Name>()
+                repeat(it.readInt()) { _ ->
+                    val id = it.readUTF()
+                    names[id] = Name(it.readUTF(), if (version == 1) nowMillis else it.readLong())
+                }
+                val histories = LinkedHashMap<String, List<ByteBuffer>>()
+                repeat(it.readInt()) { _ ->
+                    val room = it.readUTF()
+                    histories[room] = List(it.readInt()) { _ ->
+                        ByteBuffer.wrap(ByteArray(it.readInt()).also { bytes -> it.readFully(bytes) })
+                    }
+                }
+                ChatSnapshot(usersCounter, names, histories)
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package application.server.snapshot
+
+import java.nio.file.Path
+
+/**
+ * Holds the settings of the snapshots of a [application.server.ChatServer].
+ * @property file The file the snapshots are written to, and restored from at startup.
+ * @property intervalMillis The time between two snapshots.
+ * @property nameTtlMillis How long the name of a member is kept since it was last seen, so it gets its name back
+ * if it joins again meanwhile. Older names are dropped from the next snapshot.
+ */
+data class SnapshotConfig(
+    val file: Path,
+    val intervalMillis: Long = 30_000,
+    val nameTtlMillis: Long = 7 * 24 * 60 * 60 * 1000L,
+) {
+    init {
+        require(intervalMillis > 0) { "intervalMillis must be positive" }
+        require(nameTtlMillis > 0) { "nameTtlMillis must be positive" }
+    }
+}
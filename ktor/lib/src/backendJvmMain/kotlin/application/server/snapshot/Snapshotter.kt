@@ -0,0 +1,53 @@
+package application.server.snapshot
+
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Writes a snapshot, taken by [capture], every [interval][SnapshotConfig.intervalMillis] and once more when closed.
+ *
+ * Snapshots are taken and written by a thread of their own. Capturing only reads the concurrent structures of the
+ * server without locking them, so taking a snapshot never pauses the handling of messages.
+ */
+class Snapshotter(
+    private val config: SnapshotConfig,
+    private val capture: () -> ChatSnapshot,
+) : Closeable {
+
+    private val logger = LoggerFactory.getLogger(Snapshotter::class.java)
+
+    private val executor = Executors.newSingleThreadScheduledExecutor { task ->
+        Thread(task, "chat-snapshots").apply { isDaemon = true }
+    }
+
+    init {
+        executor.scheduleWithFixedDelay(::write, config.intervalMillis, config.intervalMillis, TimeUnit.MILLISECONDS)
+    }
+
+    private fun write() {
+        try {
+            val start = System.nanoTime()
+            capture().write(config.file)
+            val millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            logger.debug("Wrote snapshot to {} in {}ms", config.file, millis)
+        } catch (e: IOException) {
+            logger.warn("Could not write snapshot to {}: {}", config.file, e.message)
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots, and writes a last one.
+     */
+    override fun close() {
+        executor.shutdown()
+        executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        write()
+    }
+
+    private companion object {
+        const val CLOSE_TIMEOUT_SECONDS = 5L
+    }
+}
@@ -1,8 +1,17 @@
 import io.ktor.client.plugins.websocket.*
+import io.ktor.client.request.*
+import io.ktor.client.statement.*
+import io.ktor.http.*
 import io.ktor.server.testing.*
 import io.ktor.websocket.*
 import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertNull
+import junit.framework.TestCase.assertTrue
 import org.junit.Test
+import protocol.ChatProtocol
+import protocol.ChatRecord
+import protocol.ChatRecordReader
+import protocol.MessageType
 
 class ChatApplicationTest {
     /**
@@ -104,4 +113,248 @@ class ChatApplicationTest {
             )
         }
     }
+
+    /**
+     * This is an integration test that verifies that messages only reach the members of the sender's room.
+     *
+     * NOTE: to prevent repeating, check the previous tests for detailed explanation of what does what.
+     */
+    @Test
+    fun testRooms() {
+        testApplication {
+            val log1 = arrayListOf<String>()
+            val log2 = arrayListOf<String>()
+
+            val client = client.config {
+                install(WebSockets)
+            }
+
+            client.ws("/ws") {
+                val outer = this
+                log1 += (incoming.receive() as Frame.Text).readText()
+
+                client.ws("/ws") {
+                    val nested = this
+                    log1 += (outer.incoming.receive() as Frame.Text).readText()
+                    log2 += (nested.incoming.receive() as Frame.Text).readText()
+
+                    // Client2 moves to another room, which the lobby is notified about
+                    nested.outgoing.send(Frame.Text("/join games"))
+                    log2 += (nested.incoming.receive() as Frame.Text).readText()
+                    log1 += (outer.incoming.receive() as Frame.Text).readText()
+
+                    // Each client only receives the messages of its own room
+                    nested.outgoing.send(Frame.Text("HI"))
+                    log2 += (nested.incoming.receive() as Frame.Text).readText()
+                    outer.outgoing.send(Frame.Text("HELLO"))
+                    log1 += (outer.incoming.receive() as Frame.Text).readText()
+                }
+            }
+
+            assertEquals(
+                listOf(
+                    "[server] Member joined: user1.",
+                    "[server] Member joined: user2.",
+                    "[server] Member left: user2.",
+                    "[user1] HELLO"
+                ),
+                log1
+            )
+            assertEquals(
+                listOf(
+                    "[server] Member joined: user2.",
+                    "[server] Member joined: user2.",
+                    "[user2] HI"
+                ),
+                log2
+            )
+        }
+    }
+
+    /**
+     * This is an integration test that verifies that private messages reach a member by name, whatever its room.
+     *
+     * NOTE: to prevent repeating, check the previous tests for detailed explanation of what does what.
+     */
+    @Test
+    fun testPrivateMessages() {
+        testApplication {
+            val log1 = arrayListOf<String>()
+            val log2 = arrayListOf<String>()
+
+            val client = client.config {
+                install(WebSockets)
+            }
+
+            client.ws("/ws") {
+                val outer = this
+                log1 += (incoming.receive() as Frame.Text).readText()
+
+                client.ws("/ws") {
+                    val nested = this
+                    log1 += (outer.incoming.receive() as Frame.Text).readText()
+                    log2 += (nested.incoming.receive() as Frame.Text).readText()
+                    nested.outgoing.send(Frame.Text("/join games"))
+                    log2 += (nested.incoming.receive() as Frame.Text).readText()
+                    log1 += (outer.incoming.receive() as Frame.Text).readText()
+
+                    // Client1 messages client2 by name, and sees its own message too
+                    outer.outgoing.send(Frame.Text("/msg user2 psst"))
+                    log2 += (nested.incoming.receive() as Frame.Text).readText()
+                    log1 += (outer.incoming.receive() as Frame.Text).readText()
+                    outer.outgoing.send(Frame.Text("/msg nobody psst"))
+                    log1 += (outer.incoming.receive() as Frame.Text).readText()
+                }
+            }
+
+            assertEquals(
+                listOf(
+                    "[server] Member joined: user1.",
+                    "[server] Member joined: user2.",
+                    "[server] Member left: user2.",
+                    "[user1::msg] psst",
+                    "[server::msg] Unknown member nobody"
+                ),
+                log1
+            )
+            assertEquals(
+                listOf(
+                    "[server] Member joined: user2.",
+                    "[server] Member joined: user2.",
+                    "[user1::msg] psst"
+                ),
+                log2
+            )
+        }
+    }
+
+    /**
+     * This is an integration test that verifies that a client supporting compression gets the same messages,
+     * whether they are big enough to be compressed or not.
+     *
+     * NOTE: to prevent repeating, check the previous tests for detailed explanation of what does what.
+     */
+    @Test
+    fun testCompressedConversation() {
+        testApplication {
+            val log = arrayListOf<String>()
+            val long = "HELLO ".repeat(100)
+
+            val client = client.config {
+                install(WebSockets) {
+                    extensions {
+                        install(WebSocketDeflateExtension)
+                    }
+                }
+            }
+
+            client.webSocket("/ws") {
+                assertTrue(extensions.any { it is WebSocketDeflateExtension })
+
+                outgoing.send(Frame.Text(long))
+                for (n in 0 until 2) {
+                    log += (incoming.receive() as Frame.Text).readText()
+                }
+            }
+
+            assertEquals(
+                listOf(
+                    "[server] Member joined: user1.",
+                    "[user1] $long"
+                ),
+                log
+            )
+        }
+    }
+
+    /**
+     * This is an integration test that verifies the behaviour of a simple conversation with the binary protocol.
+     *
+     * NOTE: to prevent repeating, check the previous tests for detailed explanation of what does what.
+     */
+    @Test
+    fun testBinaryConversation() {
+        testApplication {
+            val log = arrayListOf<String>()
+
+            val client = client.config {
+                install(WebSockets)
+            }
+
+            // The binary protocol is negotiated at the upgrade with the websocket subprotocol header.
+            client.webSocket("/ws", request = { header(HttpHeaders.SecWebSocketProtocol, ChatProtocol.BINARY) }) {
+                outgoing.send(Frame.Binary(true, ChatRecord.encode(MessageType.MESSAGE, payload = "HELLO")))
+
+                for (n in 0 until 2) {
+                    val reader = ChatRecordReader((incoming.receive() as Frame.Binary).data)
+                    while (reader.next()) {
+                        log += "${reader.type} ${reader.sender()} ${reader.room()} ${reader.payload()}"
+                    }
+                }
+            }
+
+            assertEquals(
+                listOf(
+                    "NOTICE server lobby Member joined: user1.",
+                    "MESSAGE user1 lobby HELLO"
+                ),
+                log
+            )
+        }
+    }
+
+    /**
+     * This is an integration test that verifies that the metrics of the chat traffic are exposed for Prometheus.
+     */
+    @Test
+    fun testMetrics() {
+        testApplication {
+            val client = client.config {
+                install(WebSockets)
+            }
+
+            client.webSocket("/ws") {
+                outgoing.send(Frame.Text("HELLO"))
+                for (n in 0 until 2) incoming.receive()
+            }
+
+            val metrics = client.get("/metrics").bodyAsText()
+            assertTrue(metrics.contains("# TYPE chat_received_frames_total counter\nchat_received_frames_total 1\n"))
+            assertTrue(metrics.contains("# TYPE chat_broadcast_duration_seconds histogram\n"))
+        }
+    }
+
+    /**
+     * This is an integration test that verifies that only the chat route deals with the session cookie.
+     */
+    @Test
+    fun testSessionIsOnlySetForChat() {
+        testApplication {
+            assertNull(client.get("/hello").headers[HttpHeaders.SetCookie])
+            assertNull(client.get("/index.html").headers[HttpHeaders.SetCookie])
+        }
+    }
+
+    /**
+     * This is an integration test that verifies that static assets are served compressed, and that revalidating
+     * an asset the client already has answers with a 304 without body.
+     */
+    @Test
+    fun testStaticAssetsAreRevalidated() {
+        testApplication {
+            val response = client.get("/") {
+                header(HttpHeaders.AcceptEncoding, "gzip")
+            }
+            assertEquals(HttpStatusCode.OK, response.status)
+            assertEquals("gzip", response.headers[HttpHeaders.ContentEncoding])
+            val etag = response.headers[HttpHeaders.ETag]!!
+
+            val revalidated = client.get("/index.html") {
+                header(HttpHeaders.AcceptEncoding, "gzip")
+                header(HttpHeaders.IfNoneMatch, etag)
+            }
+            assertEquals(HttpStatusCode.NotModified, revalidated.status)
+            assertEquals(0, revalidated.readBytes().size)
+        }
+    }
 }
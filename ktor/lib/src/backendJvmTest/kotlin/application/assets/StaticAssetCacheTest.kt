@@ -0,0 +1,70 @@
+package application.assets
+
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertNotNull
+import junit.framework.TestCase.assertNull
+import junit.framework.TestCase.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayInputStream
+import java.util.zip.GZIPInputStream
+
+class StaticAssetCacheTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun testAssetsAreLoadedWithTheirVariants() {
+        val script = "console.log('hello');\n".repeat(100)
+        folder.newFolder("js")
+        folder.newFile("js/app.js").writeText(script)
+        folder.newFile("js/app.js.br").writeBytes(byteArrayOf(1, 2, 3))
+        folder.newFile("tiny.txt").writeText("a")
+
+        StaticAssetCache(StaticAssetsConfig(directory = folder.root.toPath())).use { cache ->
+            val asset = cache["js/app.js"]!!
+            val gzip = asset.gzip!!
+            assertEquals(script, GZIPInputStream(ByteArrayInputStream(gzip.bytes)).readBytes().decodeToString())
+            assertEquals(listOf(1, 2, 3), asset.brotli!!.bytes.map { it.toInt() })
+            assertTrue(asset.identity.etag != gzip.etag && gzip.etag != asset.brotli!!.etag)
+
+            assertEquals(asset.brotli, asset.negotiate("gzip, deflate, br"))
+            assertEquals(gzip, asset.negotiate("gzip, br;q=0"))
+            assertEquals(asset.identity, asset.negotiate(null))
+
+            // Compressing does not pay off for tiny files, and precompressed files are not assets by themselves.
+            assertNull(cache["tiny.txt"]!!.gzip)
+            assertNull(cache["js/app.js.br"])
+        }
+    }
+
+    @Test
+    fun testAssetsOfDirectoriesCreatedLaterAreReloaded() {
+        folder.newFile("index.html").writeText("<html></html>")
+
+        StaticAssetCache(StaticAssetsConfig(directory = folder.root.toPath(), reload = true)).use { cache ->
+            folder.newFolder("css", "themes")
+            folder.newFile("css/themes/dark.css").writeText("body { color: white; }")
+            awaitAsset(cache, "css/themes/dark.css")
+
+            // The new directories are watched too.
+            folder.newFile("css/app.css").writeText("body { color: black; }")
+            awaitAsset(cache, "css/app.css")
+        }
+    }
+
+    private fun awaitAsset(cache: StaticAssetCache, path: String) {
+        val deadline = System.currentTimeMillis() + 10_000
+        while (cache[path] == null && System.currentTimeMillis() < deadline) Thread.sleep(10)
+        assertNotNull(cache[path])
+    }
+
+    @Test
+    fun testAssetsAreLoadedFromTheClasspath() {
+        StaticAssetCache(StaticAssetsConfig()).use { cache ->
+            assertNotNull(cache["index.html"])
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package application.monitoring
+
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertFalse
+import junit.framework.TestCase.assertTrue
+import org.junit.Test
+
+class AccessLogRingTest {
+
+    @Test
+    fun testRecordsAreDrainedInOrder() {
+        val ring = AccessLogRing(4)
+
+        ring.offer(1, "GET", "/a", 200, 10)
+        ring.offer(2, "POST", "/b", 500, 20)
+
+        val drained = mutableListOf<String>()
+        assertEquals(2, ring.drain { drained += "${it.method} ${it.path} ${it.status}" })
+        assertEquals(listOf("GET /a 200", "POST /b 500"), drained)
+        assertEquals(0, ring.drain { })
+    }
+
+    @Test
+    fun testRecordsAreDroppedWhenFull() {
+        val ring = AccessLogRing(2)
+
+        assertTrue(ring.offer(1, "GET", "/a", 200, 10))
+        assertTrue(ring.offer(2, "GET", "/b", 200, 10))
+        assertFalse(ring.offer(3, "GET", "/c", 200, 10))
+        assertEquals(1L, ring.dropped)
+
+        ring.drain { }
+        assertTrue(ring.offer(4, "GET", "/d", 200, 10))
+        val drained = mutableListOf<String>()
+        ring.drain { drained += it.path }
+        assertEquals(listOf("/d"), drained)
+    }
+
+    @Test
+    fun testRoutesAreSampledByTheirLongestPrefix() {
+        val sampler = AccessLogSampler(
+            AccessLogConfig(sampleRate = 1.0, routeSampleRates = mapOf("/ws" to 0.0, "/ws/admin" to 1.0))
+        )
+
+        assertTrue(sampler.sample("/hello"))
+        assertFalse(sampler.sample("/ws"))
+        assertTrue(sampler.sample("/ws/admin"))
+    }
+}
@@ -0,0 +1,28 @@
+package application.server
+
+import io.ktor.websocket.*
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ReceiveChannel
+import kotlinx.coroutines.channels.SendChannel
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * A [WebSocketSession] without a network connection behind it.
+ * Every frame sent to it is delivered to [outgoing], which by default only accepts a frame when the test receives it,
+ * so a test can simulate a stalled client by simply not reading from it.
+ */
+class StubWebSocketSession(
+    override val coroutineContext: CoroutineContext,
+    val sent: Channel<Frame> = Channel(Channel.RENDEZVOUS),
+) : WebSocketSession {
+    override var masking: Boolean = false
+    override var maxFrameSize: Long = Long.MAX_VALUE
+    override val incoming: ReceiveChannel<Frame> = Channel()
+    override val outgoing: SendChannel<Frame> = sent
+    override val extensions: List<WebSocketExtension<*>> = emptyList()
+
+    override suspend fun flush() = Unit
+
+    @Deprecated("Use cancel() instead.", level = DeprecationLevel.ERROR)
+    override fun terminate() = Unit
+}
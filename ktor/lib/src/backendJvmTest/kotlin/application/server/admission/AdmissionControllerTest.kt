@@ -0,0 +1,79 @@
+package application.server.admission
+
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertNotNull
+import junit.framework.TestCase.assertNull
+import kotlinx.coroutines.async
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+
+class AdmissionControllerTest {
+
+    @Test
+    fun testSessionCap() = runBlocking {
+        val metrics = AdmissionMetrics()
+        val controller = AdmissionController(AdmissionConfig(maxConnectionsPerSession = 2), metrics)
+
+        val first = controller.admit("a")
+        assertNotNull(first)
+        assertNotNull(controller.admit("a"))
+        assertNull(controller.admit("a"))
+        // Other sessions have their own cap.
+        assertNotNull(controller.admit("b"))
+
+        // Releasing twice frees a single place.
+        first!!.release()
+        first.release()
+        assertNotNull(controller.admit("a"))
+        assertNull(controller.admit("a"))
+
+        assertEquals(4L, metrics.acceptedUpgrades)
+        assertEquals(2L, metrics.rejectedUpgrades)
+        assertEquals(0L, metrics.queuedUpgrades)
+    }
+
+    @Test
+    fun testQueuedUpgradeIsAdmittedOnceASocketCloses() = runBlocking {
+        val metrics = AdmissionMetrics()
+        val config = AdmissionConfig(maxConnections = 1, queueCapacity = 1, queueTimeoutMillis = 10_000)
+        val controller = AdmissionController(config, metrics)
+
+        val lease = controller.admit("a")!!
+        val waiting = async { controller.admit("b") }
+        while (metrics.pendingUpgrades == 0L) delay(1)
+        // The queue is full, so this one is rejected without waiting.
+        assertNull(controller.admit("c"))
+
+        lease.release()
+        assertNotNull(waiting.await())
+        assertEquals(0L, metrics.pendingUpgrades)
+        assertEquals(1L, metrics.queuedUpgrades)
+        assertEquals(2L, metrics.acceptedUpgrades)
+        assertEquals(1L, metrics.rejectedUpgrades)
+    }
+
+    @Test
+    fun testQueuedUpgradeTimesOut() = runBlocking {
+        val metrics = AdmissionMetrics()
+        val config = AdmissionConfig(maxConnections = 1, queueTimeoutMillis = 10)
+        val controller = AdmissionController(config, metrics)
+
+        assertNotNull(controller.admit("a"))
+        assertNull(controller.admit("b"))
+        assertEquals(1L, metrics.queuedUpgrades)
+        assertEquals(1L, metrics.rejectedUpgrades)
+
+    }
+
+    @Test
+    fun testRejectedUpgradeFreesItsSessionPlace() = runBlocking {
+        val config = AdmissionConfig(maxConnections = 1, maxConnectionsPerSession = 1, queueTimeoutMillis = 10)
+        val controller = AdmissionController(config, AdmissionMetrics())
+
+        val lease = controller.admit("a")!!
+        assertNull(controller.admit("b"))
+        lease.release()
+        assertNotNull(controller.admit("b"))
+    }
+}
@@ -0,0 +1,142 @@
+package application.server.cluster
+
+import application.server.ChatServer
+import application.server.ChatServerConfig
+import application.server.StubWebSocketSession
+import application.server.search.SearchConfig
+import io.ktor.websocket.*
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertTrue
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Test
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+
+class ChatClusterTest {
+
+    private suspend fun StubWebSocketSession.receiveText() =
+        withTimeout(5000) { (sent.receive() as Frame.Text).readText() }
+
+    /**
+     * Asks for the roster of a [member] with a [socket] until it has the [expected] names, since the rosters of the
+     * other nodes arrive asynchronously.
+     */
+    private suspend fun ChatServer.awaitRoster(member: String, socket: StubWebSocketSession, vararg expected: String) =
+        withTimeout(5000) {
+            while (true) {
+                who(member)
+                val names = socket.receiveText().substringAfter("] ").split(", ").filter { it.isNotEmpty() }
+                if (names.toSet() == expected.toSet()) break
+                delay(10)
+            }
+        }
+
+    /**
+     * Joins a member to each node and verifies that the events of the first node reach the member of the second.
+     */
+    private fun testConversation(busA: ClusterBus, busB: ClusterBus) = runBlocking {
+        val job = Job()
+        val nodeA = ChatServer(bus = busA)
+        val nodeB = ChatServer(bus = busB)
+        val socketA = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+        val socketB = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+        try {
+            nodeB.memberJoin("b1", socketB)
+            assertEquals("[server] Member joined: user1@b.", socketB.receiveText())
+
+            // Each node names its members on its own, with its node ID to tell them apart
+            nodeA.memberJoin("a1", socketA)
+            nodeA.message("a1", "HELLO")
+            assertEquals("[server] Member joined: user1@a.", socketB.receiveText())
+            assertEquals("[user1@a] HELLO", socketB.receiveText())
+
+            nodeB.who("b1")
+            val roster = socketB.receiveText()
+            assertTrue(roster, roster.startsWith("[server::who@"))
+            assertEquals("user1@b, user1@a", roster.substringAfter("] "))
+        } finally {
+            job.cancel()
+            busA.close()
+            busB.close()
+        }
+    }
+
+    @Test
+    fun testInProcessCluster() {
+        val hub = InProcessClusterHub()
+        testConversation(InProcessClusterBus("a", hub), InProcessClusterBus("b", hub))
+    }
+
+    @Test
+    fun testTcpCluster() {
+        val portA = freePort()
+        val portB = freePort()
+        testConversation(
+            TcpClusterBus(ClusterConfig("a", port = portA, peers = listOf(InetSocketAddress("127.0.0.1", portB)))),
+            TcpClusterBus(ClusterConfig("b", port = portB, peers = listOf(InetSocketAddress("127.0.0.1", portA)))),
+        )
+    }
+
+    @Test
+    fun testLateNodeGetsTheRosterAndDropsTheMembersOfLostNodes() = runBlocking {
+        val job = Job()
+        val hub = InProcessClusterHub()
+        val busA = InProcessClusterBus("a", hub)
+        val nodeA = ChatServer(bus = busA)
+        val socketA = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+        val socketB = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+        val busB = InProcessClusterBus("b", hub)
+        try {
+            nodeA.memberJoin("a1", socketA)
+
+            // The second node starts once the first one already has a member, which it learns from its roster.
+            val nodeB = ChatServer(bus = busB)
+            nodeB.memberJoin("b1", socketB)
+            assertEquals("[server] Member joined: user1@b.", socketB.receiveText())
+            nodeB.awaitRoster("b1", socketB, "user1@a", "user1@b")
+
+            // Once the first node is gone, so are its members.
+            busA.close()
+            nodeB.awaitRoster("b1", socketB, "user1@b")
+        } finally {
+            job.cancel()
+            busA.close()
+            busB.close()
+        }
+    }
+
+    @Test
+    fun testMessagesOfOtherNodesCanBeSearched() = runBlocking {
+        val job = Job()
+        val hub = InProcessClusterHub()
+        val busA = InProcessClusterBus("a", hub)
+        val busB = InProcessClusterBus("b", hub)
+        val nodeA = ChatServer(ChatServerConfig(search = SearchConfig()), busA)
+        val nodeB = ChatServer(ChatServerConfig(search = SearchConfig()), busB)
+        val socketA = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+        val socketB = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+        try {
+            nodeB.memberJoin("b1", socketB)
+            assertEquals("[server] Member joined: user1@b.", socketB.receiveText())
+            nodeA.memberJoin("a1", socketA)
+            nodeA.message("a1", "Hello from the cluster")
+            assertEquals("[server] Member joined: user1@a.", socketB.receiveText())
+            assertEquals("[user1@a] Hello from the cluster", socketB.receiveText())
+
+            // The message was indexed by the second node too, before it was delivered.
+            nodeB.search("b1", "cluster")
+            val hit = "[server::search] [user1@a] Hello from the cluster"
+            assertEquals("\u001E${hit.length}:$hit", socketB.receiveText())
+        } finally {
+            job.cancel()
+            busA.close()
+            busB.close()
+        }
+    }
+
+    private fun freePort() = ServerSocket(0).use { it.localPort }
+}
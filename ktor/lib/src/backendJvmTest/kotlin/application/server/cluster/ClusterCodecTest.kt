@@ -0,0 +1,30 @@
+package application.server.cluster
+
+import application.server.outbound.SharedFrame
+import junit.framework.TestCase.assertEquals
+import org.junit.Test
+import protocol.ChatRecordReader
+import protocol.MessageType
+
+class ClusterCodecTest {
+
+    @Test
+    fun testBroadcastKeepsTheFieldsOfTheRecords() {
+        val frame = SharedFrame.message(MessageType.MESSAGE, "user1@a", "lobby", "héllo")
+        val batch = listOf(
+            ClusterEvent.Broadcast("a", "lobby", frame, history = true),
+            ClusterEvent.Roster("a", mapOf("a1" to "user1@a")),
+        )
+
+        val decoded = ClusterCodec.decode(ClusterCodec.encode(batch))
+        val broadcast = decoded[0] as ClusterEvent.Broadcast
+        assertEquals(frame.buffer(), broadcast.frame.buffer())
+        val reader = ChatRecordReader(broadcast.frame.records())
+        assertEquals(true, reader.next())
+        assertEquals(
+            listOf(MessageType.MESSAGE, "user1@a", "lobby", "héllo"),
+            listOf(reader.type, reader.sender(), reader.room(), reader.payload()),
+        )
+        assertEquals(batch[1], decoded[1])
+    }
+}
@@ -0,0 +1,57 @@
+package application.server.coalescing
+
+import application.server.ChatServer
+import application.server.ChatServerConfig
+import application.server.StubWebSocketSession
+import io.ktor.websocket.*
+import junit.framework.TestCase.assertEquals
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Test
+
+class BroadcastCoalescerTest {
+
+    private fun batch(vararg messages: String) =
+        messages.joinToString(prefix = "\u001E", separator = "") { "${it.encodeToByteArray().size}:$it" }
+
+    @Test
+    fun testMessagesAreSentInBatches() = runBlocking {
+        val job = Job()
+        val socket = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+        val server = ChatServer(ChatServerConfig(coalescing = CoalescingConfig(windowMillis = 10_000, maxBatchSize = 4)))
+        try {
+            server.memberJoin("member", socket)
+            server.message("member", "héllo")
+            server.message("member", "world")
+            server.message("member", "!")
+
+            // The batch is full, so it is sent without waiting for the end of the window.
+            val frame = withTimeout(5000) { socket.sent.receive() as Frame.Text }
+            assertEquals(
+                batch("[server] Member joined: user1.", "[user1] héllo", "[user1] world", "[user1] !"),
+                frame.readText(),
+            )
+        } finally {
+            server.close()
+            job.cancel()
+        }
+    }
+
+    @Test
+    fun testSingleMessageIsSentAsItIs() = runBlocking {
+        val job = Job()
+        val socket = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+        val server = ChatServer(ChatServerConfig(coalescing = CoalescingConfig(windowMillis = 0)))
+        try {
+            server.memberJoin("member", socket)
+
+            val frame = withTimeout(5000) { socket.sent.receive() as Frame.Text }
+            assertEquals("[server] Member joined: user1.", frame.readText())
+        } finally {
+            server.close()
+            job.cancel()
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package application.server.history
+
+import junit.framework.TestCase.assertEquals
+import org.junit.Test
+import kotlin.concurrent.thread
+
+class HistoryRingTest {
+
+    @Test
+    fun testSnapshotKeepsLatestValuesInOrder() {
+        val ring = HistoryRing<String>(3)
+        assertEquals(emptyList<String>(), ring.snapshot().toList())
+
+        (1..5).forEach { ring.append("$it") }
+
+        assertEquals(listOf("3", "4", "5"), ring.snapshot().toList())
+        assertEquals(4L, ring.lastSequence)
+    }
+
+    @Test
+    fun testSnapshotFromSequence() {
+        val ring = HistoryRing<String>(10)
+        (0..5).forEach { ring.append("$it") }
+
+        assertEquals(listOf("4", "5"), ring.snapshot(from = 4).toList())
+        assertEquals(emptyList<String>(), ring.snapshot(from = 6).toList())
+    }
+
+    @Test
+    fun testSnapshotIsNotAffectedByLaterAppends() {
+        val ring = HistoryRing<String>(4)
+        (1..2).forEach { ring.append("$it") }
+        val snapshot = ring.snapshot()
+
+        ring.append("3")
+
+        assertEquals(listOf("1", "2"), snapshot.toList())
+    }
+
+    @Test
+    fun testConcurrentAppends() {
+        val ring = HistoryRing<Int>(100)
+        val writers = 8
+        val appends = 10_000
+
+        (0 until writers).map { writer ->
+            thread { repeat(appends) { ring.append(writer * appends + it) } }
+        }.forEach { it.join() }
+
+        val values = ring.snapshot().toList()
+        assertEquals(writers * appends - 1L, ring.lastSequence)
+        assertEquals(100, values.size)
+        // the values of each writer must keep the order they were appended in
+        values.groupBy { it / appends }.values.forEach { assertEquals(it.sorted(), it) }
+    }
+}
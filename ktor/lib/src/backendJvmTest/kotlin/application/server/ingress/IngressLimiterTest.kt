@@ -0,0 +1,51 @@
+package application.server.ingress
+
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertFalse
+import junit.framework.TestCase.assertTrue
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class IngressLimiterTest {
+
+    private val second = TimeUnit.SECONDS.toNanos(1)
+
+    @Test
+    fun testBurstThenSustainedRate() {
+        val limiter = IngressLimiter(IngressLimitConfig(ratePerSecond = 10.0, burst = 5), IngressMetrics())
+
+        // The whole burst is available at once, then one more frame each tenth of a second.
+        assertEquals(List(5) { true } + false, List(6) { limiter.tryAcquire(0) })
+        assertFalse(limiter.tryAcquire(second / 20))
+        assertTrue(limiter.tryAcquire(second / 10))
+        assertFalse(limiter.tryAcquire(second / 10))
+
+        // An idle socket gets its burst back, but never more than that.
+        assertEquals(List(5) { true } + false, List(6) { limiter.tryAcquire(10 * second) })
+    }
+
+    @Test
+    fun testReserveReturnsTheWait() {
+        val limiter = IngressLimiter(IngressLimitConfig(ratePerSecond = 10.0, burst = 2), IngressMetrics())
+
+        assertEquals(listOf(0L, 0L, second / 10, 2 * second / 10), List(4) { limiter.reserve(0) })
+    }
+
+    @Test
+    fun testPoliciesUpdateMetrics() = runBlocking {
+        val metrics = IngressMetrics()
+        val drop = IngressLimiter(IngressLimitConfig(1.0, 1, IngressPolicy.DROP), metrics) { 0 }
+        val disconnect = IngressLimiter(IngressLimitConfig(1.0, 1, IngressPolicy.DISCONNECT), metrics) { 0 }
+        val delay = IngressLimiter(IngressLimitConfig(1000.0, 1, IngressPolicy.DELAY), metrics) { 0 }
+
+        assertEquals(listOf(true, false, false), List(3) { drop.admit() })
+        assertEquals(listOf(true, false), List(2) { disconnect.admit() })
+        assertEquals(listOf(true, true), List(2) { delay.admit() })
+
+        assertEquals(2L, metrics.droppedFrames)
+        assertEquals(1L, metrics.disconnectedSockets)
+        assertEquals(1L, metrics.delayedFrames)
+        assertEquals(4L, metrics.throttledFrames)
+    }
+}
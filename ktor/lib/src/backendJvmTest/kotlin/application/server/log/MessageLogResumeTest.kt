@@ -0,0 +1,57 @@
+package application.server.log
+
+import application.server.ChatServer
+import application.server.ChatServerConfig
+import application.server.StubWebSocketSession
+import io.ktor.websocket.*
+import junit.framework.TestCase.assertEquals
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import protocol.ChatRecordReader
+import protocol.MessageType
+
+class MessageLogResumeTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private suspend fun StubWebSocketSession.receive() = withTimeout(5000) { sent.receive() }
+
+    private suspend fun StubWebSocketSession.receiveText() = (receive() as Frame.Text).readText()
+
+    @Test
+    fun testLobbyMessagesCarryTheOffsetToResumeFrom() = runBlocking {
+        val job = Job()
+        val server = ChatServer(ChatServerConfig(messageLog = MessageLogConfig(folder.root.toPath())))
+        val sockets = List(3) { StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED)) }
+        try {
+            server.memberJoin("a", sockets[0])
+            assertEquals("[server] Member joined: user1.", sockets[0].receiveText())
+            (1..3).forEach { server.message("a", "$it") }
+            assertEquals(listOf("#0 [user1] 1", "#1 [user1] 2", "#2 [user1] 3"), List(3) { sockets[0].receiveText() })
+
+            // A socket that already saw the second message only gets the ones after it.
+            server.memberJoin("b", sockets[1], resumeFrom = 2)
+            assertEquals("[server] Member joined: user2.", sockets[1].receiveText())
+            assertEquals("#2 [user1] 3", sockets[1].receiveText())
+
+            // Binary sockets get the offset as a record before the message.
+            server.memberJoin("c", sockets[2], resumeFrom = 2, binary = true)
+            sockets[2].receive()
+            val reader = ChatRecordReader((sockets[2].receive() as Frame.Binary).data)
+            assertEquals(true, reader.next())
+            assertEquals(MessageType.OFFSET, reader.type)
+            assertEquals("2", reader.payload())
+            assertEquals(true, reader.next())
+            assertEquals("[user1] 3", reader.payload())
+        } finally {
+            server.close()
+            job.cancel()
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package application.server.log
+
+import junit.framework.TestCase.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.ByteBuffer
+
+class MessageLogTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun config(segmentBytes: Int = 1024, retainedSegments: Int = 8) =
+        MessageLogConfig(
+            directory = folder.root.toPath(),
+            segmentBytes = segmentBytes,
+            indexIntervalBytes = 64,
+            retainedSegments = retainedSegments,
+        )
+
+    private fun MessageLog.append(text: String) = append(ByteBuffer.wrap(text.encodeToByteArray()))
+
+    private fun MessageLog.readAll(from: Long, max: Int = Int.MAX_VALUE): List<Pair<Long, String>> {
+        val messages = mutableListOf<Pair<Long, String>>()
+        read(from, max) { offset, payload ->
+            val bytes = ByteArray(payload.remaining()).also { payload.get(it) }
+            messages += offset to bytes.decodeToString()
+        }
+        return messages
+    }
+
+    @Test
+    fun testReadFromOffset() {
+        MessageLog(config()).use { log ->
+            (0 until 10).forEach { assertEquals(it.toLong(), log.append("message $it")) }
+
+            assertEquals((6L until 10).map { it to "message $it" }, log.readAll(6))
+            assertEquals(listOf(2L to "message 2", 3L to "message 3"), log.readAll(2, max = 2))
+            assertEquals(emptyList<Pair<Long, String>>(), log.readAll(10))
+        }
+    }
+
+    @Test
+    fun testRollsSegmentsAndDropsTheOldest() {
+        MessageLog(config(segmentBytes = 256, retainedSegments = 2)).use { log ->
+            (0 until 100).forEach { log.append("message number $it") }
+
+            assertEquals(2, folder.root.listFiles { _, name -> name.endsWith(".log") }!!.size)
+            val retained = log.readAll(0)
+            assertEquals(log.startOffset, retained.first().first)
+            assertEquals(99L, retained.last().first)
+            assertEquals((log.startOffset until 100).toList(), retained.map { it.first })
+        }
+    }
+
+    @Test
+    fun testRecoversTailWhenReopened() {
+        MessageLog(config(segmentBytes = 512)).use { log ->
+            (0 until 50).forEach { log.append("message $it") }
+        }
+
+        MessageLog(config(segmentBytes = 512)).use { log ->
+            assertEquals(50L, log.nextOffset)
+            assertEquals(50L, log.append("message 50"))
+            val tail = mutableListOf<Long>()
+            log.tail(3) { offset, _ -> tail += offset }
+            assertEquals(listOf(48L, 49L, 50L), tail)
+            assertEquals((0L..50).toList(), log.readAll(0).map { it.first })
+        }
+    }
+}
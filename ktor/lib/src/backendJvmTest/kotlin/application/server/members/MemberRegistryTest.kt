@@ -0,0 +1,150 @@
+package application.server.members
+
+import application.server.ChatServer
+import application.server.StubWebSocketSession
+import application.server.outbound.OutboundMetrics
+import application.server.outbound.OutboundQueue
+import application.server.outbound.OverflowPolicy
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertFalse
+import junit.framework.TestCase.assertNull
+import junit.framework.TestCase.assertSame
+import junit.framework.TestCase.assertTrue
+import io.ktor.websocket.*
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+class MemberRegistryTest {
+
+    private val job = Job()
+    private val metrics = OutboundMetrics()
+
+    private fun queue() = OutboundQueue(StubWebSocketSession(job), 16, OverflowPolicy.DROP_OLDEST, metrics)
+
+    @Test
+    fun testFirstAndLastSockets() {
+        val registry = MemberRegistry(4)
+        val tab1 = queue()
+        val tab2 = queue()
+
+        val first = registry.join("a", tab1) { "alice" }
+        assertTrue(first.first)
+        val second = registry.join("a", tab2) { "other" }
+        assertFalse(second.first)
+        assertSame(first.member, second.member)
+        assertEquals("alice", second.member.name)
+        assertEquals(listOf(tab1, tab2), second.member.sockets.toList())
+
+        assertFalse(registry.leave("a", tab1.socket)!!.last)
+        assertNull(registry.leave("a", tab1.socket))
+        val departure = registry.leave("a", tab2.socket)!!
+        assertTrue(departure.last)
+        assertSame(tab2, departure.queue)
+        assertNull(registry["a"])
+        assertEquals(0, registry.size)
+        job.cancel()
+    }
+
+    @Test
+    fun testNamesAreUnique() {
+        val registry = MemberRegistry(4)
+        val counter = AtomicInteger()
+        val alice = registry.join("a", queue()) { "user${counter.incrementAndGet()}" }.member
+        registry.join("b", queue()) { "user${counter.incrementAndGet()}" }
+
+        assertTrue(registry.rename(alice, "alice"))
+        assertSame(alice, registry.named("alice"))
+        assertNull(registry.named("user1"))
+        // Renaming to its own name is fine, but not to another member's.
+        assertTrue(registry.rename(alice, "alice"))
+        assertFalse(registry.rename(alice, "user2"))
+
+        // Generated names skip the ones taken.
+        assertTrue(registry.rename(alice, "user3"))
+        val carol = registry.join("c", queue()) { "user${counter.incrementAndGet()}" }.member
+        assertEquals("user4", carol.name)
+
+        registry.leave("a", alice.sockets.first().socket)
+        assertNull(registry.named("user3"))
+        assertFalse(registry.rename(alice, "alice"))
+        job.cancel()
+    }
+
+    @Test
+    fun testConcurrentSocketsOfAMember() {
+        val registry = MemberRegistry(2)
+        val queues = List(1000) { queue() }
+        val firsts = AtomicInteger()
+        val lasts = AtomicInteger()
+        val start = CountDownLatch(1)
+
+        val threads = queues.chunked(250).map { chunk ->
+            thread {
+                start.await()
+                for (queue in chunk) {
+                    if (registry.join("a", queue) { "alice" }.first) firsts.incrementAndGet()
+                    if (registry.leave("a", queue.socket)!!.last) lasts.incrementAndGet()
+                }
+            }
+        }
+        start.countDown()
+        threads.forEach { it.join() }
+
+        // Every member created was removed exactly once, and none is left behind.
+        assertEquals(firsts.get(), lasts.get())
+        assertEquals(0, registry.size)
+        job.cancel()
+    }
+
+    @Test
+    fun testConcurrentJoinsAndLeavesKeepTheMemberInItsRoom() {
+        val server = ChatServer()
+        val start = CountDownLatch(1)
+
+        // Each thread opens and closes sockets of the same session, like overlapping page reloads,
+        // and keeps its last socket open.
+        val sockets = List(4) { StubWebSocketSession(job, Channel(Channel.UNLIMITED)) }
+        val threads = sockets.map { kept ->
+            thread {
+                start.await()
+                runBlocking {
+                    repeat(250) {
+                        val socket = StubWebSocketSession(job, Channel(Channel.UNLIMITED))
+                        server.memberJoin("a", socket)
+                        server.memberLeft("a", socket)
+                    }
+                    server.memberJoin("a", kept)
+                }
+            }
+        }
+        start.countDown()
+        threads.forEach { it.join() }
+
+        runBlocking {
+            // The member is still in the lobby and in the roster, so every kept socket gets its messages.
+            server.message("a", "hello")
+            val received = sockets.map { socket -> socket.receiveUntil { it.endsWith("] hello") } }
+            assertEquals(1, received.toSet().size)
+            val name = received[0].removePrefix("[").removeSuffix("] hello")
+            server.who("a")
+            assertEquals(name, sockets[0].receiveUntil { it.startsWith("[server::who@") }.substringAfter("] "))
+        }
+        server.close()
+        job.cancel()
+    }
+
+    private suspend fun StubWebSocketSession.receiveUntil(predicate: (String) -> Boolean): String =
+        withTimeout(5000) {
+            var text: String
+            do {
+                text = (sent.receive() as Frame.Text).readText()
+            } while (!predicate(text))
+            text
+        }
+}
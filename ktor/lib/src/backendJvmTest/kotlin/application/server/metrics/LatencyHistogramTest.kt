@@ -0,0 +1,23 @@
+package application.server.metrics
+
+import junit.framework.TestCase.assertEquals
+import org.junit.Test
+
+class LatencyHistogramTest {
+
+    @Test
+    fun testDurationsAreCountedInTheirBuckets() {
+        val histogram = LatencyHistogram(longArrayOf(10, 100, 1000))
+
+        listOf(5L, 10L, 11L, 500L, 5000L).forEach(histogram::record)
+
+        assertEquals(listOf(2L, 3L, 4L, 5L), List(4) { histogram.cumulativeCount(it) })
+        assertEquals(5L, histogram.count)
+        assertEquals(5526L, histogram.sumNanos)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testBoundsMustIncrease() {
+        LatencyHistogram(longArrayOf(10, 10))
+    }
+}
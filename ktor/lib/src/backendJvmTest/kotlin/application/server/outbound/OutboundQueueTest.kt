@@ -0,0 +1,74 @@
+package application.server.outbound
+
+import application.server.StubWebSocketSession
+import io.ktor.websocket.*
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertFalse
+import junit.framework.TestCase.assertTrue
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.junit.Test
+
+class OutboundQueueTest {
+
+    /**
+     * Creates a queue whose socket never reads by itself, offers it a first frame and lets the writer pick it up,
+     * so the writer is stalled on that frame and the queue starts filling.
+     */
+    private suspend fun CoroutineScope.stalledQueue(
+        policy: OverflowPolicy,
+        metrics: OutboundMetrics,
+    ): Pair<OutboundQueue, StubWebSocketSession> {
+        val socket = StubWebSocketSession(coroutineContext + Job())
+        val queue = OutboundQueue(socket, capacity = 2, policy = policy, metrics = metrics)
+        queue.offer(SharedFrame.text("0"))
+        yield()
+        return queue to socket
+    }
+
+    @Test
+    fun testDropNewestKeepsQueuedFrames() = runBlocking {
+        val metrics = OutboundMetrics()
+        val (queue, socket) = stalledQueue(OverflowPolicy.DROP_NEWEST, metrics)
+
+        val accepted = (1..4).map { queue.offer(SharedFrame.text("$it")) }
+
+        assertEquals(listOf(true, true, false, false), accepted)
+        assertEquals(2, queue.size)
+        assertEquals(2L, metrics.queuedFrames)
+        assertEquals(2L, metrics.droppedFrames)
+        assertEquals(listOf("0", "1", "2"), List(3) { (socket.sent.receive() as Frame.Text).readText() })
+        socket.coroutineContext[Job]!!.cancel()
+    }
+
+    @Test
+    fun testDropOldestKeepsNewestFrames() = runBlocking {
+        val metrics = OutboundMetrics()
+        val (queue, socket) = stalledQueue(OverflowPolicy.DROP_OLDEST, metrics)
+
+        val accepted = (1..4).map { queue.offer(SharedFrame.text("$it")) }
+
+        assertTrue(accepted.all { it })
+        assertEquals(2, queue.size)
+        assertEquals(2L, metrics.droppedFrames)
+        assertEquals(listOf("0", "3", "4"), List(3) { (socket.sent.receive() as Frame.Text).readText() })
+        socket.coroutineContext[Job]!!.cancel()
+    }
+
+    @Test
+    fun testDisconnectEvictsSlowSocket() = runBlocking {
+        val metrics = OutboundMetrics()
+        val (queue, socket) = stalledQueue(OverflowPolicy.DISCONNECT, metrics)
+
+        assertTrue(queue.offer(SharedFrame.text("1")))
+        assertTrue(queue.offer(SharedFrame.text("2")))
+        assertFalse(queue.offer(SharedFrame.text("3")))
+        assertFalse(queue.offer(SharedFrame.text("4")))
+
+        assertEquals(1L, metrics.evictedSockets)
+        socket.coroutineContext[Job]!!.join()
+        assertEquals(0L, metrics.queuedFrames)
+    }
+}
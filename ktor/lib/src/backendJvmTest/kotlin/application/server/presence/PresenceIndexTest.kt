@@ -0,0 +1,54 @@
+package application.server.presence
+
+import application.server.outbound.SharedFrame
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertSame
+import org.junit.Test
+
+class PresenceIndexTest {
+
+    private fun SharedFrame.text() = buffer().let { Charsets.UTF_8.decode(it).toString() }
+
+    @Test
+    fun testRosterIsSerializedOncePerVersion() {
+        val index = PresenceIndex()
+        index.put("a", "alice")
+        index.put("b", "bob")
+
+        val roster = index.roster()
+        assertEquals("[server::who@2] alice, bob", roster.text())
+        assertSame(roster, index.roster())
+
+        // Setting the same name again is not a change.
+        index.put("a", "alice")
+        assertSame(roster, index.roster())
+        assertEquals(2L, index.version)
+
+        index.put("a", "ann")
+        assertEquals("[server::who@3] ann, bob", index.roster().text())
+    }
+
+    @Test
+    fun testChangesSinceAVersion() {
+        val index = PresenceIndex()
+        index.put("a", "alice")
+        index.put("b", "bob")
+        index.put("a", "ann")
+        index.remove("b")
+
+        assertEquals("[server::presence@4] -alice, +ann, -bob", index.since(2).text())
+        assertEquals("[server::presence@4] ", index.since(4).text())
+        assertEquals("[server::who@4] ann", index.since(7).text())
+    }
+
+    @Test
+    fun testWholeRosterOnceTheChangesAreEvicted() {
+        val index = PresenceIndex(deltaCapacity = 2)
+        index.put("a", "alice")
+        index.put("b", "bob")
+        index.put("c", "carol")
+
+        assertEquals("[server::who@3] alice, bob, carol", index.since(0).text())
+        assertEquals("[server::presence@3] +bob, +carol", index.since(1).text())
+    }
+}
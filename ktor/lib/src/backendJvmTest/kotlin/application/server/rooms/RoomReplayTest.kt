@@ -0,0 +1,62 @@
+package application.server.rooms
+
+import application.server.ChatServer
+import application.server.ChatServerConfig
+import application.server.StubWebSocketSession
+import application.server.outbound.SharedFrame
+import io.ktor.websocket.*
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertSame
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Test
+
+class RoomReplayTest {
+
+    private fun batch(vararg messages: String) =
+        messages.joinToString(prefix = "\u001E", separator = "") { "${it.encodeToByteArray().size}:$it" }
+
+    private suspend fun StubWebSocketSession.receiveText() =
+        withTimeout(5000) { (sent.receive() as Frame.Text).readText() }
+
+    @Test
+    fun testHistoryIsReplayedInBatches() = runBlocking {
+        val job = Job()
+        val server = ChatServer(ChatServerConfig(replayBatchSize = 2))
+        val sockets = List(3) { StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED)) }
+        try {
+            server.memberJoin("a", sockets[0])
+            (1..3).forEach { server.message("a", "$it") }
+
+            server.memberJoin("b", sockets[1])
+            assertEquals("[server] Member joined: user2.", sockets[1].receiveText())
+            assertEquals(batch("[user1] 1", "[user1] 2"), sockets[1].receiveText())
+            assertEquals("[user1] 3", sockets[1].receiveText())
+
+            // The socket limits the history to the latest message.
+            server.memberJoin("c", sockets[2], historyLimit = 1)
+            assertEquals("[server] Member joined: user3.", sockets[2].receiveText())
+            assertEquals("[user1] 3", sockets[2].receiveText())
+        } finally {
+            server.close()
+            job.cancel()
+        }
+    }
+
+    @Test
+    fun testWholeReplayIsReusedUntilTheNextMessage() {
+        val room = Room("lobby", shards = 1, historyCapacity = 10)
+        assertEquals(emptyList<Any>(), room.replay(batchSize = 10))
+
+        room.history.append(SharedFrame.text("1"))
+        val replay = room.replay(batchSize = 10)
+        assertSame(replay, room.replay(batchSize = 10))
+        assertEquals(emptyList<Any>(), room.replay(batchSize = 10, limit = 0))
+
+        room.history.append(SharedFrame.text("2"))
+        assertEquals(1, room.replay(batchSize = 10).size)
+        assertEquals(2, room.replay(batchSize = 1).size)
+    }
+}
@@ -0,0 +1,51 @@
+package application.server.search
+
+import application.server.search.SearchIndex.Hit
+import junit.framework.TestCase.assertEquals
+import org.junit.Test
+
+class SearchIndexTest {
+
+    @Test
+    fun testLatestMessagesWithAllTheTermsFirst() {
+        val index = SearchIndex(SearchConfig(window = 10, maxResults = 2))
+        index.add("alice", "Hello, World!")
+        index.add("bob", "hello there")
+        index.add("dave", "the world says HELLO")
+        index.add("erin", "hello world again")
+
+        assertEquals(
+            listOf(Hit("erin", "hello world again"), Hit("dave", "the world says HELLO")),
+            index.search("world hello"),
+        )
+        assertEquals(emptyList<Hit>(), index.search("hello goodbye"))
+        assertEquals(emptyList<Hit>(), index.search("!?"))
+    }
+
+    @Test
+    fun testOldestMessagesAreEvicted() {
+        val index = SearchIndex(SearchConfig(window = 3))
+        (1..5).forEach { index.add("alice", "message number$it") }
+
+        assertEquals(3, index.size)
+        assertEquals(
+            listOf("number5", "number4", "number3"),
+            index.search("message").map { it.text.substringAfter(' ') },
+        )
+        assertEquals(emptyList<Hit>(), index.search("number2"))
+        // The terms of the evicted messages are dropped too.
+        assertEquals(4, index.terms)
+    }
+
+    @Test
+    fun testMessagesAreKeptWhileTheIndexGrows() {
+        val index = SearchIndex(SearchConfig(window = 1000, maxResults = 1000))
+        (0 until 1500).forEach { index.add("alice", "message number$it") }
+
+        assertEquals(1000, index.size)
+        val hits = index.search("message")
+        assertEquals(1000, hits.size)
+        assertEquals("message number1499", hits.first().text)
+        assertEquals("message number500", hits.last().text)
+    }
+}
@@ -0,0 +1,79 @@
+package application.server.snapshot
+
+import application.server.ChatServer
+import application.server.ChatServerConfig
+import application.server.StubWebSocketSession
+import io.ktor.websocket.*
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertNull
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.ByteBuffer
+
+class ChatSnapshotTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private suspend fun StubWebSocketSession.receiveText() =
+        withTimeout(5000) { (sent.receive() as Frame.Text).readText() }
+
+    @Test
+    fun testWriteAndRead() {
+        val file = folder.root.toPath().resolve("chat.snapshot")
+        assertNull(ChatSnapshot.read(file))
+
+        val message = ByteBuffer.wrap("[alice] héllo".encodeToByteArray())
+        val names = mapOf("a" to ChatSnapshot.Name("alice", 1), "b" to ChatSnapshot.Name("user7", 2))
+        ChatSnapshot(7, names, mapOf("lobby" to listOf(message))).write(file)
+        val snapshot = ChatSnapshot.read(file)!!
+
+        assertEquals(7, snapshot.usersCounter)
+        assertEquals(names, snapshot.names)
+        assertEquals(listOf(message), snapshot.histories["lobby"])
+    }
+
+    @Test
+    fun testRestart() = runBlocking {
+        val job = Job()
+        val config = ChatServerConfig(snapshot = SnapshotConfig(folder.root.toPath().resolve("chat.snapshot")))
+        try {
+            ChatServer(config).use { server ->
+                server.memberJoin("a", StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED)))
+                server.memberRenamed("a", "alice")
+                server.message("a", "HELLO")
+            }
+
+            // The member gets its name back and the history, while new members keep being numbered.
+            ChatServer(config).use { server ->
+                val socketA = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+                server.memberJoin("a", socketA)
+                assertEquals("[server] Member joined: alice.", socketA.receiveText())
+                assertEquals("[alice] HELLO", socketA.receiveText())
+
+                val socketB = StubWebSocketSession(coroutineContext + job, Channel(Channel.UNLIMITED))
+                server.memberJoin("b", socketB)
+                assertEquals("[server] Member joined: user2.", socketB.receiveText())
+            }
+        } finally {
+            job.cancel()
+        }
+    }
+
+    @Test
+    fun testNamesNotSeenForTooLongAreDropped() {
+        val file = folder.root.toPath().resolve("chat.snapshot")
+        val now = System.currentTimeMillis()
+        val names = mapOf("old" to ChatSnapshot.Name("olga", now - 2000), "new" to ChatSnapshot.Name("nina", now))
+        ChatSnapshot(2, names, emptyMap()).write(file)
+
+        // Neither restored nor written again in the next snapshot.
+        ChatServer(ChatServerConfig(snapshot = SnapshotConfig(file, nameTtlMillis = 1000))).close()
+        assertEquals(mapOf("new" to "nina"), ChatSnapshot.read(file)!!.names.mapValues { it.value.name })
+    }
+}
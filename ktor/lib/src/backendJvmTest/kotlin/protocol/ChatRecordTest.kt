@@ -0,0 +1,47 @@
+package protocol
+
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertFalse
+import org.junit.Test
+
+class ChatRecordTest {
+
+    @Test
+    fun testRecordsRoundTrip() {
+        val frame = ChatRecord.encode(MessageType.MESSAGE, "user1", "lobby", "héllo") +
+            ChatRecord.encode(MessageType.WHO) +
+            ChatRecord.encode(MessageType.JOIN, room = "games")
+
+        val reader = ChatRecordReader(frame)
+        val records = generateSequence { if (reader.next()) reader else null }
+            .map { listOf(it.type, it.sender(), it.room(), it.payload()) }
+            .toList()
+
+        assertEquals(
+            listOf(
+                listOf(MessageType.MESSAGE, "user1", "lobby", "héllo"),
+                listOf(MessageType.WHO, "", "", ""),
+                listOf(MessageType.JOIN, "", "games", ""),
+            ),
+            records
+        )
+        assertFalse(reader.next())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testTruncatedRecordIsRejected() {
+        val record = ChatRecord.encode(MessageType.MESSAGE, payload = "hello")
+        ChatRecordReader(record.copyOf(record.size - 1)).next()
+    }
+
+    @Test
+    fun testUnknownTypeIsSkipped() {
+        val record = ChatRecord.encode(MessageType.MESSAGE, payload = "hello").also { it[1] = 127 }
+        val reader = ChatRecordReader(record + ChatRecord.encode(MessageType.HELP))
+
+        reader.next()
+        assertEquals(null, reader.type)
+        reader.next()
+        assertEquals(MessageType.HELP, reader.type)
+    }
+}
@@ -0,0 +1,13 @@
+package protocol
+
+/**
+ * The websocket subprotocols spoken at `/ws`, negotiated with the `Sec-WebSocket-Protocol` header at the upgrade.
+ * Clients that do not ask for any subprotocol speak the text protocol: free text with `/` commands, and replies
+ * formatted as `[sender] message`.
+ */
+object ChatProtocol {
+    /**
+     * The binary protocol, whose frames hold [ChatRecord]s.
+     */
+    const val BINARY = "chat.binary.v${ChatRecord.VERSION}"
+}
@@ -0,0 +1,58 @@
+package protocol
+
+/**
+ * The binary wire format: a frame holds one or more records back to back, each one laid out as
+ *
+ * ```
+ * [version: 1 byte][type: 1 byte]
+ * [sender length: 2 bytes][sender: UTF-8]
+ * [room length: 2 bytes][room: UTF-8]
+ * [payload length: 4 bytes][payload: UTF-8]
+ * ```
+ *
+ * with lengths in big-endian order. The sender is a member name (or `server`), and both the sender and the room
+ * are empty when they do not apply.
+ */
+object ChatRecord {
+
+    const val VERSION: Byte = 1
+
+    private const val HEADER_BYTES = 2 + 2 + 2 + 4
+
+    /**
+     * Encodes a record from its already encoded fields.
+     */
+    fun encode(type: MessageType, sender: ByteArray, room: ByteArray, payload: ByteArray): ByteArray {
+        require(sender.size <= 0xFFFF && room.size <= 0xFFFF) { "sender and room must be shorter than 64KiB" }
+        val record = ByteArray(HEADER_BYTES + sender.size + room.size + payload.size)
+        record[0] = VERSION
+        record[1] = type.code
+        var position = writeShort(record, 2, sender.size)
+        sender.copyInto(record, position)
+        position = writeShort(record, position + sender.size, room.size)
+        room.copyInto(record, position)
+        position = writeInt(record, position + room.size, payload.size)
+        payload.copyInto(record, position)
+        return record
+    }
+
+    /**
+     * Encodes a record from its fields.
+     */
+    fun encode(type: MessageType, sender: String = "", room: String = "", payload: String = ""): ByteArray =
+        encode(type, sender.encodeToByteArray(), room.encodeToByteArray(), payload.encodeToByteArray())
+
+    private fun writeShort(bytes: ByteArray, position: Int, value: Int): Int {
+        bytes[position] = (value ushr 8).toByte()
+        bytes[position + 1] = value.toByte()
+        return position + 2
+    }
+
+    private fun writeInt(bytes: ByteArray, position: Int, value: Int): Int {
+        bytes[position] = (value ushr 24).toByte()
+        bytes[position + 1] = (value ushr 16).toByte()
+        bytes[position + 2] = (value ushr 8).toByte()
+        bytes[position + 3] = value.toByte()
+        return position + 4
+    }
+}
@@ -0,0 +1,74 @@
+package protocol
+
+/**
+ * Reads the [ChatRecord]s of a binary frame in place: each field is exposed as a range of the frame [data],
+ * so dispatching on the [type] takes no copies, and only the fields actually used need to be decoded to Strings.
+ *
+ * ```
+ * val reader = ChatRecordReader(frame.data)
+ * while (reader.next()) {
+ *     when (reader.type) { ... }
+ * }
+ * ```
+ */
+class ChatRecordReader(private val data: ByteArray) {
+
+    private var next = 0
+
+    /**
+     * The type of the current record, or null if its type is unknown (e.g. sent by a newer version).
+     */
+    var type: MessageType? = null
+        private set
+
+    var senderStart = 0
+        private set
+    var senderEnd = 0
+        private set
+    var roomStart = 0
+        private set
+    var roomEnd = 0
+        private set
+    var payloadStart = 0
+        private set
+    var payloadEnd = 0
+        private set
+
+    /**
+     * Moves to the next record, and returns false if there are no more records.
+     * @throws IllegalArgumentException if the record is truncated or of an unsupported version.
+     */
+    fun next(): Boolean {
+        if (next >= data.size) return false
+        require(next + 2 <= data.size && data[next] == ChatRecord.VERSION) { "Unsupported record version" }
+        type = MessageType.of(data[next + 1])
+        senderStart = next + 4
+        senderEnd = senderStart + readShort(next + 2)
+        roomStart = senderEnd + 2
+        roomEnd = roomStart + readShort(senderEnd)
+        payloadStart = roomEnd + 4
+        payloadEnd = payloadStart + readInt(roomEnd)
+        require(payloadEnd in payloadStart..data.size) { "Truncated record" }
+        next = payloadEnd
+        return true
+    }
+
+    fun sender(): String = data.decodeToString(senderStart, senderEnd)
+
+    fun room(): String = data.decodeToString(roomStart, roomEnd)
+
+    fun payload(): String = data.decodeToString(payloadStart, payloadEnd)
+
+    private fun readShort(position: Int): Int {
+        require(position + 2 <= data.size) { "Truncated record" }
+        return (data[position].toInt() and 0xFF shl 8) or (data[position + 1].toInt() and 0xFF)
+    }
+
+    private fun readInt(position: Int): Int {
+        require(position + 4 <= data.size) { "Truncated record" }
+        return (data[position].toInt() and 0xFF shl 24) or
+            (data[position + 1].toInt() and 0xFF shl 16) or
+            (data[position + 2].toInt() and 0xFF shl 8) or
+            (data[position + 3].toInt() and 0xFF)
+    }
+}
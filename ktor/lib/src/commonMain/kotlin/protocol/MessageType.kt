@@ -0,0 +1,74 @@
+package protocol
+
+/**
+ * The types of [ChatRecord]s, identified on the wire by their [code].
+ */
+enum class MessageType(val code: Byte) {
+    /**
+     * A chat message: the text sent by a client, or the text of a member sent to a room.
+     */
+    MESSAGE(1),
+
+    /**
+     * A notice of the server about the members of a room, e.g. a member joined.
+     */
+    NOTICE(2),
+
+    /**
+     * The reply of the server to a command, sent only to the member who sent it.
+     */
+    REPLY(3),
+
+    /**
+     * An already formatted text line, as the messages replayed from the persistent log or received from another node.
+     */
+    TEXT(4),
+
+    /**
+     * A private message: the text sent by a client to the member named in the room field, or the text of a member
+     * sent only to that member (and to the sender's other sockets).
+     */
+    PRIVATE(5),
+
+    /**
+     * The offset in the persistent log of the message in the next record, in the payload, which a reconnecting
+     * client can resume the history from (the offset after it, with `/ws?offset=N`).
+     */
+    OFFSET(6),
+
+    /**
+     * Asks for the names of all the members.
+     */
+    WHO(16),
+
+    /**
+     * Renames the member to the name in the payload.
+     */
+    RENAME(17),
+
+    /**
+     * Moves the member to the room in the room field.
+     */
+    JOIN(18),
+
+    /**
+     * Asks for the available commands.
+     */
+    HELP(19),
+
+    /**
+     * Searches the latest messages of the member's room for the terms in the payload.
+     */
+    SEARCH(20);
+
+    companion object {
+        private val byCode = arrayOfNulls<MessageType>(128).also { types ->
+            entries.forEach { types[it.code.toInt()] = it }
+        }
+
+        /**
+         * Returns the type with a [code], or null if the code is unknown.
+         */
+        fun of(code: Byte): MessageType? = byCode.getOrNull(code.toInt())
+    }
+}
@@ -0,0 +1,33 @@
+package client
+
+/**
+ * Decodes the frames sent by the server, which may hold a batch of messages: a record separator character (`0x1E`),
+ * followed by each message as its length in bytes, a colon and its UTF-8 bytes, e.g. `\u001E5:hello6:world!`.
+ */
+internal object MessageBatch {
+
+    private const val MARKER: Byte = 0x1E
+    private const val SEPARATOR = ':'.code.toByte()
+    private const val ZERO = '0'.code.toByte()
+
+    /**
+     * Calls [onMessage] for each message in the text frame [data], which is either a batch or a single message.
+     */
+    fun decode(data: ByteArray, onMessage: (String) -> Unit) {
+        if (data.isEmpty() || data[0] != MARKER) {
+            onMessage(data.decodeToString())
+            return
+        }
+        var position = 1
+        while (position < data.size) {
+            var length = 0
+            while (data[position] != SEPARATOR) {
+                length = length * 10 + (data[position] - ZERO)
+                position++
+            }
+            position++
+            onMessage(data.decodeToString(position, position + length))
+            position += length
+        }
+    }
+}
@@ -3,40 +3,120 @@ package client
 import config.serverConfig
 import io.ktor.client.*
 import io.ktor.client.plugins.websocket.*
+import io.ktor.client.request.*
 import io.ktor.http.*
 import io.ktor.websocket.*
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import protocol.ChatProtocol
+import protocol.ChatRecord
+import protocol.ChatRecordReader
+import protocol.MessageType
 
 /**
  * A WebSocket client that connects to the server in the path `/ws` and sends and receives messages.
  * @property client The HTTP client.
+ * @property binary Whether to speak the binary protocol instead of the text one.
  */
-class WsClient(val client: HttpClient) {
+class WsClient(val client: HttpClient, val binary: Boolean = false) {
     private var session: WebSocketSession? = null
 
+    /**
+     * The log offset of the latest lobby message received, or null if none was received yet.
+     */
+    var lastOffset: Long? = null
+        private set
+
+    /**
+     * Connects to the server. Once reconnecting, it resumes the history from the message after the [lastOffset],
+     * so the messages already shown are not received again.
+     */
     suspend fun connect() {
         session = client.webSocketSession(
             method = HttpMethod.Get,
             host = serverConfig.host,
             port = serverConfig.port,
             path = "/ws"
-        )
+        ) {
+            if (binary) header(HttpHeaders.SecWebSocketProtocol, ChatProtocol.BINARY)
+            lastOffset?.let { parameter("offset", it + 1) }
+        }
     }
 
     suspend fun send(message: String) {
-        session?.send(Frame.Text(message))
+        val record = if (binary) record(message) else null
+        session?.send(if (record != null) Frame.Binary(true, record) else Frame.Text(message))
     }
 
     suspend fun receive(onReceive: (input: String) -> Unit) {
         withContext(Dispatchers.Default) {
             while (true) {
-                val frame = session?.incoming?.receive()
-                if (frame is Frame.Text) {
-                    val message = frame.readText()
-                    onReceive(message)
+                when (val frame = session?.incoming?.receive()) {
+                    // A frame may hold several messages when the server sends them in batches.
+                    is Frame.Text -> MessageBatch.decode(frame.data) { onReceive(unstamped(it)) }
+                    is Frame.Binary -> {
+                        val reader = ChatRecordReader(frame.data)
+                        while (reader.next()) {
+                            when (reader.type) {
+                                MessageType.OFFSET -> lastOffset = reader.payload().toLongOrNull() ?: lastOffset
+                                MessageType.TEXT -> onReceive(reader.payload())
+                                else -> onReceive(format(reader))
+                            }
+                        }
+                    }
+
+                    else -> Unit
                 }
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Encodes a message typed by the user as a binary record. Unknown commands are sent as text,
+     * so the server replies about them.
+     */
+    private fun record(message: String): ByteArray? =
+        when {
+            message.startsWith("/who") ->
+                ChatRecord.encode(MessageType.WHO, payload = message.removePrefix("/who").trim())
+
+            message.startsWith("/user") ->
+                ChatRecord.encode(MessageType.RENAME, payload = message.removePrefix("/user").trim())
+
+            message.startsWith("/join") ->
+                ChatRecord.encode(MessageType.JOIN, room = message.removePrefix("/join").trim())
+
+            message.startsWith("/msg") -> message.removePrefix("/msg").trim().let {
+                val recipient = it.substringBefore(' ')
+                ChatRecord.encode(MessageType.PRIVATE, room = recipient, payload = it.substringAfter(' ', "").trim())
+            }
+
+            message.startsWith("/search") ->
+                ChatRecord.encode(MessageType.SEARCH, payload = message.removePrefix("/search").trim())
+
+            message.startsWith("/help") -> ChatRecord.encode(MessageType.HELP)
+            message.startsWith("/") -> null
+            else -> ChatRecord.encode(MessageType.MESSAGE, payload = message)
+        }
+
+    /**
+     * Keeps the log offset a text message is stamped with (`#offset [sender] text`), and returns the message without it.
+     */
+    private fun unstamped(message: String): String {
+        if (!message.startsWith(OFFSET_PREFIX)) return message
+        val end = message.indexOf(' ')
+        val offset = if (end > 0) message.substring(1, end).toLongOrNull() else null
+        if (offset == null) return message
+        lastOffset = offset
+        return message.substring(end + 1)
+    }
+
+    /**
+     * Formats a record the same way the text protocol does.
+     */
+    private fun format(reader: ChatRecordReader) = "[${reader.sender()}] ${reader.payload()}"
+
+    private companion object {
+        const val OFFSET_PREFIX = '#'
+    }
+}
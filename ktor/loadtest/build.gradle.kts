@@ -0,0 +1,30 @@
+plugins {
+    application
+    alias(libs.plugins.kotlinJvm)
+}
+
+application {
+    mainClass.set("loadtest.MainKt")
+    applicationDefaultJvmArgs = listOf("-Xmx2g")
+}
+
+repositories {
+    mavenCentral()
+    google()
+}
+
+dependencies {
+    implementation(project(":lib"))
+    implementation(enforcedPlatform(libs.ktor.bom))
+    implementation(libs.ktor.client.cio)
+    implementation(libs.ktor.client.websockets)
+    implementation(libs.kotlinx.coroutines.core)
+    implementation(libs.logback.classic)
+}
+
+// Run with: ./gradlew :loadtest:run --args="--clients=2000 --rate=1 --duration=60"
+// The server runs on the engine of application.conf (ktor.deployment.engine), which a -Dktor.deployment.engine=cio JVM arg overrides.
+// The report is also written as JSON to build/loadtest/report.json, and the run fails if a gate is not met.
+tasks.named<JavaExec>("run") {
+    workingDir = layout.buildDirectory.get().asFile.also { it.mkdirs() }
+}
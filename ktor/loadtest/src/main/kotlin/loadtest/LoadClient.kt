@@ -0,0 +1,104 @@
+package loadtest
+
+import io.ktor.client.*
+import io.ktor.client.plugins.websocket.*
+import io.ktor.client.request.*
+import io.ktor.websocket.*
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import kotlin.coroutines.coroutineContext
+import kotlin.math.ln
+import kotlin.random.Random
+
+/**
+ * A chat client that stays connected to `/ws` for a random lifetime, and then connects again as a new member,
+ * to simulate members joining and leaving.
+ * Senders send messages holding the time they were sent at, so every client receiving them can record
+ * the end-to-end delivery latency. Since all the clients run in the same process, their clocks match.
+ * Messages sent before a client connected are replays of the history, not deliveries, so they are not recorded.
+ */
+class LoadClient(
+    private val http: HttpClient,
+    private val port: Int,
+    private val room: String?,
+    private val sender: Boolean,
+    private val config: LoadTestConfig,
+    private val latencies: LatencyRecorder,
+    private val stats: LoadStats,
+) {
+
+    suspend fun run() {
+        while (coroutineContext.isActive) {
+            try {
+                connection()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                stats.failures.increment()
+                delay(RETRY_DELAY_MILLIS)
+            }
+        }
+    }
+
+    private suspend fun connection() {
+        // Each reconnection would get the history again, which is not what is being measured.
+        http.webSocket(host = HOST, port = port, path = "/ws", request = { parameter("history", 0) }) {
+            stats.connections.increment()
+            val connectedAt = System.nanoTime()
+            // Moving to a room replays its history, whatever the history parameter.
+            room?.let { send(Frame.Text("/join $it")) }
+
+            val sending = if (sender) launch {
+                val intervalMillis = (1000 / config.rate).toLong()
+                while (true) {
+                    delay(intervalMillis)
+                    send(Frame.Text("$MARKER${System.nanoTime()};"))
+                    stats.sent.increment()
+                }
+            } else null
+
+            withTimeoutOrNull(lifetimeMillis()) {
+                for (frame in incoming) {
+                    if (frame is Frame.Text) received(frame.readText(), connectedAt)
+                }
+            }
+            sending?.cancel()
+        }
+    }
+
+    /**
+     * Records the latency of every load test message in a frame, which may be a batch of messages,
+     * skipping the ones sent before the client [connectedAt].
+     */
+    private fun received(text: String, connectedAt: Long) {
+        val now = System.nanoTime()
+        var start = text.indexOf(MARKER)
+        while (start >= 0) {
+            val end = text.indexOf(';', start)
+            if (end < 0) return
+            text.substring(start + MARKER.length, end).toLongOrNull()?.takeIf { it >= connectedAt }?.let {
+                latencies.record(now - it)
+                stats.delivered.increment()
+            }
+            start = text.indexOf(MARKER, end)
+        }
+    }
+
+    /**
+     * Draws how long the next connection lasts, so that about a [LoadTestConfig.churn] fraction of the clients
+     * reconnect each second.
+     */
+    private fun lifetimeMillis(): Long {
+        if (config.churn == 0.0) return Long.MAX_VALUE
+        return (-ln(1 - Random.nextDouble()) / config.churn * 1000).toLong().coerceAtLeast(1)
+    }
+
+    private companion object {
+        const val HOST = "127.0.0.1"
+        const val MARKER = "lt "
+        const val RETRY_DELAY_MILLIS = 100L
+    }
+}
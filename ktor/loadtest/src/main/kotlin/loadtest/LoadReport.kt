@@ -0,0 +1,63 @@
+package loadtest
+
+/**
+ * The results of a load test run, measured after the ramp up.
+ */
+data class LoadReport(
+    val clients: Int,
+    val durationSeconds: Double,
+    val sent: Long,
+    val delivered: Long,
+    val connections: Long,
+    val failures: Long,
+    val p50Millis: Double,
+    val p90Millis: Double,
+    val p99Millis: Double,
+    val p999Millis: Double,
+    val maxMillis: Double,
+    val peakHeapMegabytes: Double,
+    val retainedHeapMegabytes: Double,
+) {
+    val sentPerSecond: Double
+        get() = sent / durationSeconds
+
+    val deliveredPerSecond: Double
+        get() = delivered / durationSeconds
+
+    /**
+     * Returns the gates of the [config] this run did not meet, if any.
+     */
+    fun failedGates(config: LoadTestConfig): List<String> = listOfNotNull(
+        config.maxP99Millis?.takeIf { p99Millis > it }?.let { "p99 latency $p99Millis ms > $it ms" },
+        config.minThroughput?.takeIf { deliveredPerSecond < it }
+            ?.let { "throughput $deliveredPerSecond msg/s < $it msg/s" },
+        config.maxHeapMegabytes?.takeIf { peakHeapMegabytes > it }?.let { "peak heap $peakHeapMegabytes MiB > $it MiB" },
+    )
+
+    override fun toString() = """
+        |clients:      $clients ($connections connections, $failures failures)
+        |throughput:   ${"%.1f".format(sentPerSecond)} msg/s sent, ${"%.1f".format(deliveredPerSecond)} msg/s delivered
+        |latency (ms): p50=$p50Millis p90=$p90Millis p99=$p99Millis p99.9=$p999Millis max=$maxMillis
+        |heap (MiB):   peak=${"%.1f".format(peakHeapMegabytes)} retained=${"%.1f".format(retainedHeapMegabytes)}
+    """.trimMargin()
+
+    /**
+     * Formats the report as JSON, to be compared across runs.
+     */
+    fun toJson() = """
+        |{
+        |  "clients": $clients,
+        |  "durationSeconds": $durationSeconds,
+        |  "sent": $sent,
+        |  "delivered": $delivered,
+        |  "sentPerSecond": $sentPerSecond,
+        |  "deliveredPerSecond": $deliveredPerSecond,
+        |  "connections": $connections,
+        |  "failures": $failures,
+        |  "latencyMillis": {
+        |    "p50": $p50Millis, "p90": $p90Millis, "p99": $p99Millis, "p999": $p999Millis, "max": $maxMillis
+        |  },
+        |  "heapMegabytes": { "peak": $peakHeapMegabytes, "retained": $retainedHeapMegabytes }
+        |}
+    """.trimMargin()
+}
@@ -0,0 +1,23 @@
+package loadtest
+
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Counters shared by all the [LoadClient]s.
+ */
+class LoadStats {
+    val sent = LongAdder()
+    val delivered = LongAdder()
+    val connections = LongAdder()
+    val failures = LongAdder()
+
+    /**
+     * Resets the counters, e.g. to discard what happened while warming up.
+     */
+    fun reset() {
+        sent.reset()
+        delivered.reset()
+        connections.reset()
+        failures.reset()
+    }
+}
@@ -0,0 +1,68 @@
+package loadtest
+
+/**
+ * Holds the settings of a load test run, parsed from `--name=value` arguments.
+ * @property clients The number of concurrent websocket clients.
+ * @property senders The number of clients that send messages, the rest only receive them.
+ * @property rate The messages per second each sender sends.
+ * @property rooms The number of rooms the clients are spread across, 1 to keep all of them in the lobby.
+ * @property churn The fraction of the clients that leave and join again each second.
+ * @property rampUpSeconds The time over which the clients connect.
+ * @property durationSeconds The time the load is measured for, after the ramp up.
+ * @property maxP99Millis The gate on the 99th percentile of the delivery latency, if any.
+ * @property minThroughput The gate on the delivered messages per second, if any.
+ * @property maxHeapMegabytes The gate on the peak heap usage, if any.
+ */
+data class LoadTestConfig(
+    val clients: Int = 1000,
+    val senders: Int = 100,
+    val rate: Double = 1.0,
+    val rooms: Int = 10,
+    val churn: Double = 0.01,
+    val rampUpSeconds: Int = 10,
+    val durationSeconds: Int = 30,
+    val maxP99Millis: Double? = null,
+    val minThroughput: Double? = null,
+    val maxHeapMegabytes: Double? = null,
+) {
+    init {
+        require(clients > 0) { "clients must be positive" }
+        require(senders in 0..clients) { "senders must be between 0 and clients" }
+        require(rate > 0) { "rate must be positive" }
+        require(rooms > 0) { "rooms must be positive" }
+        require(churn in 0.0..1.0) { "churn must be between 0 and 1" }
+        require(durationSeconds > 0) { "durationSeconds must be positive" }
+    }
+
+    companion object {
+        /**
+         * Parses the `--name=value` arguments, falling back to the defaults for the missing ones.
+         */
+        fun parse(args: Array<String>): LoadTestConfig {
+            val values = args.associate { arg ->
+                require(arg.startsWith("--") && '=' in arg) { "Unexpected argument $arg, expected --name=value" }
+                arg.removePrefix("--").substringBefore('=') to arg.substringAfter('=')
+            }
+            val unknown = values.keys - NAMES
+            require(unknown.isEmpty()) { "Unknown arguments $unknown, expected any of $NAMES" }
+            val defaults = LoadTestConfig()
+            return LoadTestConfig(
+                clients = values["clients"]?.toInt() ?: defaults.clients,
+                senders = values["senders"]?.toInt() ?: defaults.senders,
+                rate = values["rate"]?.toDouble() ?: defaults.rate,
+                rooms = values["rooms"]?.toInt() ?: defaults.rooms,
+                churn = values["churn"]?.toDouble() ?: defaults.churn,
+                rampUpSeconds = values["rampUp"]?.toInt() ?: defaults.rampUpSeconds,
+                durationSeconds = values["duration"]?.toInt() ?: defaults.durationSeconds,
+                maxP99Millis = values["maxP99Millis"]?.toDouble(),
+                minThroughput = values["minThroughput"]?.toDouble(),
+                maxHeapMegabytes = values["maxHeapMegabytes"]?.toDouble(),
+            )
+        }
+
+        private val NAMES = setOf(
+            "clients", "senders", "rate", "rooms", "churn", "rampUp", "duration",
+            "maxP99Millis", "minThroughput", "maxHeapMegabytes",
+        )
+    }
+}
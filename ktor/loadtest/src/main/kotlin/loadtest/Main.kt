@@ -0,0 +1,112 @@
+package loadtest
+
+import application.ChatApplication
+import application.config.engineConfig
+import application.engine.chatEngine
+import com.typesafe.config.ConfigFactory
+import io.ktor.client.*
+import io.ktor.client.engine.cio.*
+import io.ktor.client.plugins.websocket.*
+import io.ktor.server.config.*
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.system.exitProcess
+
+private val logger = LoggerFactory.getLogger("loadtest")
+
+/**
+ * Runs a load test against an embedded chat server: thousands of websocket clients connect to it, some of them
+ * send messages at a fixed rate, and some leave and join again, while the delivery latency, the throughput and
+ * the heap usage are measured. The clients run in the same process, so the heap usage includes theirs.
+ *
+ * The process exits with 1 if any of the gates of the [LoadTestConfig] is not met, so it can be used to catch
+ * regressions, e.g. `--maxP99Millis=50 --minThroughput=10000`.
+ */
+fun main(args: Array<String>) = runBlocking {
+    val config = LoadTestConfig.parse(args)
+    logger.info("Starting load test with {}", config)
+
+    // Uses the same chat and engine settings as the application, but installs the module only once.
+    val serverConfig = HoconApplicationConfig(ConfigFactory.load().withoutPath("ktor.application"))
+    val engine = serverConfig.engineConfig().copy(host = "127.0.0.1", port = 0)
+    val server = chatEngine(serverConfig, engine, listOf { ChatApplication().apply { module() } }).start(wait = false)
+    val port = server.resolvedConnectors().first().port
+
+    val http = HttpClient(CIO) {
+        install(WebSockets)
+        engine {
+            maxConnectionsCount = config.clients * 2
+        }
+    }
+    val latencies = LatencyRecorder()
+    val stats = LoadStats()
+    val memory = ManagementFactory.getMemoryMXBean()
+    val peakHeap = AtomicLong()
+
+    val load = launch(Dispatchers.Default) {
+        launch {
+            while (true) {
+                peakHeap.accumulateAndGet(memory.heapMemoryUsage.used, ::maxOf)
+                delay(HEAP_SAMPLE_MILLIS)
+            }
+        }
+        val rampUpDelay = config.rampUpSeconds * 1000L / config.clients
+        repeat(config.clients) { i ->
+            val room = if (config.rooms > 1) "room${i % config.rooms}" else null
+            launch { LoadClient(http, port, room, i < config.senders, config, latencies, stats).run() }
+            if (rampUpDelay > 0) delay(rampUpDelay)
+        }
+    }
+
+    delay(config.rampUpSeconds * 1000L + WARM_UP_MILLIS)
+    logger.info("All clients connected, measuring for {}s", config.durationSeconds)
+    latencies.reset()
+    stats.reset()
+    peakHeap.set(0)
+    val start = System.nanoTime()
+    delay(config.durationSeconds * 1000L)
+    val elapsedSeconds = (System.nanoTime() - start) / 1e9
+    val sent = stats.sent.sum()
+    val delivered = stats.delivered.sum()
+
+    load.cancelAndJoin()
+    http.close()
+    server.stop(1000, 5000)
+    System.gc()
+
+    val report = LoadReport(
+        clients = config.clients,
+        durationSeconds = elapsedSeconds,
+        sent = sent,
+        delivered = delivered,
+        connections = stats.connections.sum(),
+        failures = stats.failures.sum(),
+        p50Millis = latencies.percentile(0.5),
+        p90Millis = latencies.percentile(0.9),
+        p99Millis = latencies.percentile(0.99),
+        p999Millis = latencies.percentile(0.999),
+        maxMillis = latencies.percentile(1.0),
+        peakHeapMegabytes = peakHeap.get() / MEGABYTE,
+        retainedHeapMegabytes = memory.heapMemoryUsage.used / MEGABYTE,
+    )
+    println(report)
+    File("loadtest").mkdirs()
+    File("loadtest/report.json").writeText(report.toJson())
+
+    val failed = report.failedGates(config)
+    if (failed.isNotEmpty()) {
+        failed.forEach { logger.error("Gate not met: {}", it) }
+        exitProcess(1)
+    }
+}
+
+private const val HEAP_SAMPLE_MILLIS = 500L
+private const val WARM_UP_MILLIS = 2000L
+private const val MEGABYTE = 1024.0 * 1024.0
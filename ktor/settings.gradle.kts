@@ -24,4 +24,6 @@ dependencyResolutionManagement {
 rootProject.name = "ktor"
 
 include(":lib")
-include(":apps:android-app")
\ No newline at end of file
+include(":apps:android-app")
+include(":benchmarks")
+include(":loadtest")
\ No newline at end of file